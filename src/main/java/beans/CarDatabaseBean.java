@@ -1,28 +1,47 @@
 package beans;
 
+import calculation.CO2EmissionFactors;
+import calculation.EmissionCoefficients;
 import car.Car;
-import car.database.Driver;
+import car.database.CarCatalog;
+import car.database.CarDatabaseUpdater;
+import car.database.CarRepository;
 import car.database.RestConsumer;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import de.dailab.jiactng.agentcore.action.AbstractMethodExposingBean;
 import de.dailab.jiactng.agentcore.action.scope.ActionScope;
 import util.CO2FootprintProperties;
+import util.RestClient;
 
-import java.io.InputStream;
+import java.io.IOException;
 import java.sql.SQLException;
 
 public class CarDatabaseBean extends AbstractMethodExposingBean {
 
 	private CO2FootprintProperties properties;
 
+	private CarRepository repository;
+
+	private CarDatabaseUpdater updater;
+
+	private boolean restClientAcquired = false;
+
+	// the catalog snapshot of the last run may be older than the repository until the catalog was reloaded once
+	private boolean catalogReloaded = false;
+
 	@Override
-	public void doStart() {
+	public void doStart() throws Exception {
+		super.doStart();
+		log.info("CarDatabaseBean - starting");
+		this.properties = new CO2FootprintProperties();
+		this.repository = CarRepository.SHARED.acquire(properties);
 		try {
-			super.doStart();
-			log.info("CarDatabaseBean - starting");
-			this.properties = new CO2FootprintProperties();
+			RestClient.CAR_DATABASE.acquire(properties);
+			restClientAcquired = true;
+			this.updater = new CarDatabaseUpdater(repository, new RestConsumer(properties), properties);
 		} catch (Exception e) {
-			log.error(e.getMessage(),e);
+			releaseShared();
+			throw e;
 		}
 	}
 
@@ -34,29 +53,87 @@ public class CarDatabaseBean extends AbstractMethodExposingBean {
 		} catch (Exception e) {
 			log.error(e.getMessage(), e);
 		}
+		releaseShared();
+	}
+
+	// releases only what this bean acquired, the references of the other beans must stay intact
+	private void releaseShared() {
+		if (restClientAcquired) {
+			restClientAcquired = false;
+			try {
+				RestClient.CAR_DATABASE.release();
+			} catch (Exception e) {
+				log.error(e.getMessage(), e);
+			}
+		}
+		if (repository != null) {
+			try {
+				CarRepository.SHARED.release();
+			} catch (Exception e) {
+				log.error(e.getMessage(), e);
+			}
+			repository = null;
+		}
 	}
 
 	/**
 	 * Periodically executed method to download the car database .csv via the API and feed the data into this
-	 * applications own database.
+	 * applications own car repository.
 	 * <p>
 	 * The interval is set in resources/Agent.xml
 	 */
 	public void execute() {
 		log.info("CarDatabaseBean - starting database update");
 
-		RestConsumer restConsumer = new RestConsumer(properties);
-		InputStream databaseInputStream;
+		// serve the snapshot or the cars that are already in the repository while the update runs
+		if (repository.getCatalog() == null) reloadCatalog();
+
+		CarDatabaseUpdater.Outcome outcome = null;
 		try {
-			databaseInputStream = restConsumer.downloadDatabase();
-			Driver driver = new Driver(properties);
-			driver.deleteAllRows();
-			driver.uploadDataToDatabase(databaseInputStream);
-			driver.close();
+			outcome = updater.update();
 		} catch (Exception e) {
 			log.error(e.getMessage(), e);
 		}
-		log.info("CarDatabaseBean - finished database update");
+		log.info("CarDatabaseBean - finished database update: " + outcome);
+
+		if (outcome == CarDatabaseUpdater.Outcome.INCREMENTAL || outcome == CarDatabaseUpdater.Outcome.FULL || !catalogReloaded) reloadCatalog();
+	}
+
+	private void reloadCatalog() {
+		try {
+			CarCatalog catalog = repository.reloadCatalog();
+			catalogReloaded = true;
+			log.info("CarDatabaseBean - catalog with " + catalog.size() + " cars built in " + catalog.getBuildTimeMillis()
+					+ "ms, " + catalog.getMemoryFootprint() / 1024 + " KiB off-heap");
+
+			// precompute the emission coefficients before the first calculation needs them
+			EmissionCoefficients coefficients = EmissionCoefficients.of(catalog, CO2EmissionFactors.getFactorSet());
+			log.info("CarDatabaseBean - emission coefficients built in " + coefficients.getBuildTimeMillis() + "ms, "
+					+ coefficients.getMemoryFootprint() / 1024 + " KiB");
+		} catch (IOException | SQLException e) {
+			log.error(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Switches the cache database back to the car data that was replaced by the last update.
+	 *
+	 * @return {@code true} if a previous generation existed and is live again
+	 */
+	@Expose(name = "ACTION#beans.CarDatabaseBean.rollbackDatabase", scope = ActionScope.AGENT)
+	public Boolean rollbackDatabase() {
+		log.info("New method invocation - rollbackDatabase(...) called");
+		boolean rolledBack = false;
+		try {
+			rolledBack = repository.rollbackDatabase();
+			// the state of the last import doesn't describe the restored data
+			if (rolledBack) updater.resetState();
+		} catch (SQLException | IOException e) {
+			log.error(e.getMessage(), e);
+		}
+
+		if (rolledBack) reloadCatalog();
+		return rolledBack;
 	}
 
 	@Expose(name = "ACTION#beans.CarDatabaseBean.getBrands", scope = ActionScope.AGENT)
@@ -64,10 +141,8 @@ public class CarDatabaseBean extends AbstractMethodExposingBean {
 		log.info("New method invocation - getBrands(...) called");
 		ObjectNode brandsJson = null;
 		try {
-			Driver driver = new Driver(properties);
-			brandsJson = driver.getBrandsAsJson();
-			driver.close();
-		} catch (SQLException | ClassNotFoundException e) {
+			brandsJson = repository.getBrandsAsJson();
+		} catch (SQLException e) {
 			log.error(e.getMessage(), e);
 		}
 		return brandsJson;
@@ -78,10 +153,8 @@ public class CarDatabaseBean extends AbstractMethodExposingBean {
 		log.info("New method invocation - getModels(...) called");
 		ObjectNode modelsJson = null;
 		try {
-			Driver driver = new Driver(properties);
-			modelsJson = driver.getModelsAsJson(brand);
-			driver.close();
-		} catch (SQLException | ClassNotFoundException e) {
+			modelsJson = repository.getModelsAsJson(brand);
+		} catch (SQLException e) {
 			log.error(e.getMessage(), e);
 		}
 
@@ -93,10 +166,8 @@ public class CarDatabaseBean extends AbstractMethodExposingBean {
 		log.info("New method invocation - getModelsByFuel(...) called");
 		ObjectNode modelsJson = null;
 		try {
-			Driver driver = new Driver(properties);
-			modelsJson = driver.getModelsByFuelAsJson(brand, fuel);
-			driver.close();
-		} catch (SQLException | ClassNotFoundException e) {
+			modelsJson = repository.getModelsByFuelAsJson(brand, fuel);
+		} catch (SQLException e) {
 			log.error(e.getMessage(), e);
 		}
 
@@ -108,10 +179,8 @@ public class CarDatabaseBean extends AbstractMethodExposingBean {
 		log.info("New method invocation - getFuel(...) called");
 		ObjectNode fuelJson = null;
 		try {
-			Driver driver = new Driver(properties);
-			fuelJson = driver.getFuelAsJson(brand, model);
-			driver.close();
-		} catch (SQLException | ClassNotFoundException e) {
+			fuelJson = repository.getFuelAsJson(brand, model);
+		} catch (SQLException e) {
 			log.error(e.getMessage(), e);
 		}
 
@@ -123,10 +192,8 @@ public class CarDatabaseBean extends AbstractMethodExposingBean {
 		log.info("New method invocation - getFuelByBrand(...) called");
 		ObjectNode fuelJson = null;
 		try {
-			Driver driver = new Driver(properties);
-			fuelJson = driver.getFuelByBrandAsJson(brand);
-			driver.close();
-		} catch (SQLException | ClassNotFoundException e) {
+			fuelJson = repository.getFuelByBrandAsJson(brand);
+		} catch (SQLException e) {
 			log.error(e.getMessage(), e);
 		}
 
@@ -138,10 +205,8 @@ public class CarDatabaseBean extends AbstractMethodExposingBean {
 		log.info("New method invocation - getCarID(...) called");
 		ObjectNode idJson = null;
 		try {
-			Driver driver = new Driver(properties);
-			idJson = driver.getCarIdAsJson(brand, model, fuel);
-			driver.close();
-		} catch (SQLException | ClassNotFoundException e) {
+			idJson = repository.getCarIdAsJson(brand, model, fuel);
+		} catch (SQLException e) {
 			log.error(e.getMessage(), e);
 		}
 
@@ -153,10 +218,8 @@ public class CarDatabaseBean extends AbstractMethodExposingBean {
 		log.info("New method invocation - getCar(...) called");
 		Car car = null;
 		try {
-			Driver driver = new Driver(properties);
-			car = driver.getCar(carID);
-			driver.close();
-		} catch (SQLException | ClassNotFoundException e) {
+			car = repository.getCar(carID);
+		} catch (SQLException e) {
 			log.error(e.getMessage(), e);
 		}
 
@@ -2,45 +2,311 @@ package beans;
 
 import calculation.CO2Calculator;
 import calculation.CO2EmissionFactors;
+import calculation.ElectricityMix;
+import calculation.EmissionCoefficients;
+import calculation.EmissionFactorSet;
+import calculation.EmissionRanking;
+import calculation.EmissionUncertainty;
+import calculation.EmissionsBatch;
 import car.Car;
-import car.database.Driver;
+import car.CarResolver;
+import car.FuelType;
+import car.database.CarRepository;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import de.dailab.jiactng.agentcore.action.AbstractMethodExposingBean;
 import de.dailab.jiactng.agentcore.action.Action;
 import de.dailab.jiactng.agentcore.action.scope.ActionScope;
 import de.dailab.jiactng.agentcore.ontology.IActionDescription;
 import routing.CarRoute;
+import routing.GeocodeCache;
 import routing.Place;
 import routing.PublicTransportRoute;
+import routing.RouteCache;
+import routing.RouteEstimator;
+import routing.RouteMatrix;
+import util.AdaptiveLimiter;
 import util.CO2FootprintProperties;
+import util.CircuitBreaker;
+import util.Futures;
+import util.LruCache;
+import util.RestClient;
 
+import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.sql.SQLException;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @SuppressWarnings("DanglingJavadoc")
 public class VehicleCO2Calculator extends AbstractMethodExposingBean {
 
 	private CO2FootprintProperties properties;
 
+	private CarRepository repository;
+
+	private boolean restClientAcquired = false;
+
+	private CarResolver carResolver;
+
+	private RouteCache routeCache;
+	private GeocodeCache geocodeCache;
+
+	// calibrated with the cached routes
+	private volatile RouteEstimator routeEstimator = RouteEstimator.uncalibrated();
+
+	// looks up cars that are not in the catalog while the route is requested
+	private ExecutorService carLookupExecutor;
+
+	private EmissionUncertainty uncertainty;
+
+	// last modification of EmissionFactorsFile and of the CarbonIntensityDirectory that was loaded
+	private FileTime emissionFactorsModified;
+	private FileTime carbonIntensityModified;
+
 	public void doStart() throws Exception {
 		super.doStart();
 		log.info("VehicleCO2Calculator - starting");
 		this.properties = new CO2FootprintProperties();
+		this.repository = CarRepository.SHARED.acquire(properties);
+		try {
+			RestClient.OPEN_ROUTE_SERVICE.acquire(properties);
+			restClientAcquired = true;
+			this.carResolver = new CarResolver(repository, properties.getCarResolverCacheSize());
+			this.routeCache = new RouteCache(properties);
+			this.geocodeCache = new GeocodeCache(properties);
+			AtomicInteger threadNumber = new AtomicInteger();
+			this.carLookupExecutor = Executors.newFixedThreadPool(properties.getCarLookupThreads(), runnable -> {
+				Thread thread = new Thread(runnable, "VehicleCO2Calculator-car-lookup-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			if (!properties.getRouteCacheFile().isEmpty()) {
+				try {
+					int routes = routeCache.load(Paths.get(properties.getRouteCacheFile()));
+					log.info("VehicleCO2Calculator - loaded " + routes + " cached routes");
+				} catch (IOException e) {
+					log.error("VehicleCO2Calculator - starting with an empty route cache: " + e.getMessage(), e);
+				}
+			}
+			recalibrateRouteEstimator();
+			this.uncertainty = new EmissionUncertainty(
+					EmissionUncertainty.Triangular.parse("UncertaintyConsumptionFactor", properties.getUncertaintyConsumptionFactor()),
+					properties.getUncertaintyRoadClassShift(),
+					EmissionUncertainty.Triangular.parse("UncertaintyLocalBusShare", properties.getUncertaintyLocalBusShare()),
+					properties.getUncertaintySamples(), properties.getUncertaintySeed());
+			reloadEmissionFactors();
+			reloadCarbonIntensity();
+		} catch (Exception e) {
+			if (carLookupExecutor != null) carLookupExecutor.shutdownNow();
+			releaseShared();
+			throw e;
+		}
+	}
+
+	/**
+	 * Periodically executed method that applies changes of the {@code EmissionFactorsFile} and the
+	 * {@code CarbonIntensityDirectory} and calibrates the route estimator with the cached routes.
+	 * <p>
+	 * The interval is set in resources/Agent.xml
+	 */
+	public void execute() {
+		reloadEmissionFactors();
+		reloadCarbonIntensity();
+		recalibrateRouteEstimator();
+	}
+
+	private void recalibrateRouteEstimator() {
+		RouteEstimator estimator = RouteEstimator.calibrate(routeCache);
+		if (estimator.getSamples() != routeEstimator.getSamples()) log.info("VehicleCO2Calculator - " + estimator);
+		routeEstimator = estimator;
+	}
+
+	// the route of OpenRouteService, or the estimated route if requested or if OpenRouteService fails and
+	// RouteEstimatorFallback is set
+	private CompletableFuture<CarRoute> getRoute(Place start, Place destination, boolean estimate) {
+		if (estimate) return CompletableFuture.completedFuture(routeEstimator.estimate(start, destination));
+
+		CompletableFuture<CarRoute> route = Futures.within(routeCache.getRouteAsync(start, destination),
+				properties.getRoutingDeadline(), "Route request");
+		if (!properties.getRouteEstimatorFallback()) return route;
+
+		return route.exceptionally(e -> {
+			log.warn("VehicleCO2Calculator - estimating the route: " + e.getMessage());
+			return routeEstimator.estimate(start, destination);
+		});
+	}
+
+	private void reloadEmissionFactors() {
+		if (properties.getEmissionFactorsFile().isEmpty()) return;
+
+		try {
+			java.nio.file.Path file = Paths.get(properties.getEmissionFactorsFile());
+			FileTime modified = Files.getLastModifiedTime(file);
+			if (modified.equals(emissionFactorsModified)) return;
+
+			EmissionFactorSet factors = CO2EmissionFactors.load(file);
+			emissionFactorsModified = modified;
+			log.info("VehicleCO2Calculator - using emission factors " + factors.getVersion() + " of " + file);
+
+			EmissionCoefficients coefficients = getCoefficients();
+			log.info("VehicleCO2Calculator - emission coefficients built in " + coefficients.getBuildTimeMillis() + "ms, "
+					+ coefficients.getMemoryFootprint() / 1024 + " KiB");
+		} catch (IOException e) {
+			log.error("VehicleCO2Calculator - keeping emission factors " + CO2EmissionFactors.getFactorSet().getVersion() + ": " + e.getMessage(), e);
+		}
+	}
+
+	private void reloadCarbonIntensity() {
+		if (properties.getCarbonIntensityDirectory().isEmpty()) return;
+
+		try {
+			java.nio.file.Path directory = Paths.get(properties.getCarbonIntensityDirectory());
+			FileTime modified = Files.getLastModifiedTime(directory);
+			for (ElectricityMix mix : ElectricityMix.values()) {
+				java.nio.file.Path file = directory.resolve(mix.getName() + ".csv");
+				if (Files.exists(file) && Files.getLastModifiedTime(file).compareTo(modified) > 0) modified = Files.getLastModifiedTime(file);
+			}
+			if (modified.equals(carbonIntensityModified)) return;
+
+			int loaded = CO2EmissionFactors.loadCarbonIntensity(directory);
+			carbonIntensityModified = modified;
+			log.info("VehicleCO2Calculator - using " + loaded + " hourly carbon intensity series of " + directory);
+		} catch (IOException e) {
+			log.error("VehicleCO2Calculator - keeping hourly carbon intensity: " + e.getMessage(), e);
+		}
+	}
+
+	// coefficients of the current catalog and emission factors
+	private EmissionCoefficients getCoefficients() {
+		return EmissionCoefficients.of(repository.getCatalog(), CO2EmissionFactors.getFactorSet());
+	}
+
+	// the car if it isn't in the catalog (yet), null if the precomputed coefficients are used
+	private Car resolveCar(String carID, EmissionCoefficients coefficients) throws SQLException {
+		return coefficients.indexOf(carID) >= 0 ? null : Objects.requireNonNull(carResolver.resolve(carID));
+	}
+
+	// completes immediately for cars of the catalog, otherwise looks the car up on the carLookupExecutor
+	private CompletableFuture<Car> resolveCarAsync(String carID, EmissionCoefficients coefficients) {
+		if (coefficients.indexOf(carID) >= 0) return CompletableFuture.completedFuture(null);
+
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return resolveCar(carID, coefficients);
+			} catch (SQLException e) {
+				throw new CompletionException(e);
+			}
+		}, carLookupExecutor);
+	}
+
+	private double calculateCarEmissions(String carID, CarRoute carRoute, String mix, EmissionCoefficients coefficients,
+										 String departure) throws SQLException {
+		return calculateCarEmissions(carID, resolveCar(carID, coefficients), carRoute, mix, coefficients, departure);
+	}
+
+	// uses the precomputed coefficients unless the car was resolved, the mix is only read for electric cars
+	private double calculateCarEmissions(String carID, Car car, CarRoute carRoute, String mixName, EmissionCoefficients coefficients,
+										 String departure) {
+		int index = car == null ? coefficients.indexOf(carID) : -1;
+		boolean electric = car == null ? coefficients.isElectric(index) : car.isElectric();
+		ElectricityMix mix = electric ? ElectricityMix.fromName(mixName) : null;
+
+		if (departure == null) {
+			if (car == null) return coefficients.calculate(index, mix, carRoute.getUrbanKM(), carRoute.getNonUrbanKM(), carRoute.getAutobahnKM());
+			return CO2Calculator.calculateCarEmissions(car, carRoute, mix, coefficients.getFactors());
+		}
+
+		long departureEpochSecond = Instant.parse(departure).getEpochSecond();
+		if (car == null) return coefficients.calculate(index, mix, carRoute.getUrbanKM(), carRoute.getNonUrbanKM(), carRoute.getAutobahnKM(),
+				departureEpochSecond, carRoute.getDurationSeconds());
+		return CO2Calculator.calculateCarEmissions(car, carRoute.getUrbanKM(), carRoute.getNonUrbanKM(), carRoute.getAutobahnKM(), mix,
+				coefficients.getFactors(), departureEpochSecond, carRoute.getDurationSeconds());
+	}
+
+	// p5/p50/p95 of the car emissions, the emissions are linear in the kilometers of each road class
+	private ObjectNode carEmissionsBands(String carID, CarRoute carRoute, String mix, EmissionCoefficients coefficients,
+										 String departure) throws SQLException {
+		return carEmissionsBands(carID, resolveCar(carID, coefficients), carRoute, mix, coefficients, departure);
+	}
+
+	private ObjectNode carEmissionsBands(String carID, Car car, CarRoute carRoute, String mix, EmissionCoefficients coefficients,
+										 String departure) {
+		double duration = carRoute.getDurationSeconds();
+		EmissionUncertainty.Bands bands = uncertainty.carEmissions(
+				calculateCarEmissions(carID, car, new CarRoute(1, 0, 0, duration), mix, coefficients, departure),
+				calculateCarEmissions(carID, car, new CarRoute(0, 1, 0, duration), mix, coefficients, departure),
+				calculateCarEmissions(carID, car, new CarRoute(0, 0, 1, duration), mix, coefficients, departure),
+				carRoute.getUrbanKM(), carRoute.getNonUrbanKM(), carRoute.getAutobahnKM());
+		return toJson(bands);
+	}
+
+	private static ObjectNode toJson(EmissionUncertainty.Bands bands) {
+		ObjectNode node = new ObjectMapper().createObjectNode();
+		node.put("p5", bands.getP5());
+		node.put("p50", bands.getP50());
+		node.put("p95", bands.getP95());
+		return node;
 	}
 
 	@Override
-	public void doStop() throws Exception {
-		super.doStop();
-		log.info("VehicleCO2Calculator - stopping");
+	public void doStop() {
+		try {
+			super.doStop();
+			log.info("VehicleCO2Calculator - stopping");
+		} catch (Exception e) {
+			log.error(e.getMessage(), e);
+		}
+		if (carLookupExecutor != null) carLookupExecutor.shutdownNow();
+		if (routeCache != null && !properties.getRouteCacheFile().isEmpty()) {
+			try {
+				int routes = routeCache.save(Paths.get(properties.getRouteCacheFile()));
+				log.info("VehicleCO2Calculator - saved " + routes + " cached routes");
+			} catch (IOException e) {
+				log.error("VehicleCO2Calculator - could not save the route cache: " + e.getMessage(), e);
+			}
+		}
+		releaseShared();
+	}
+
+	// releases only what this bean acquired, the references of the other beans must stay intact
+	private void releaseShared() {
+		if (restClientAcquired) {
+			restClientAcquired = false;
+			try {
+				RestClient.OPEN_ROUTE_SERVICE.release();
+			} catch (Exception e) {
+				log.error(e.getMessage(), e);
+			}
+		}
+		if (repository != null) {
+			try {
+				CarRepository.SHARED.release();
+			} catch (Exception e) {
+				log.error(e.getMessage(), e);
+			}
+			repository = null;
+		}
 	}
 
 
@@ -77,6 +343,85 @@ public class VehicleCO2Calculator extends AbstractMethodExposingBean {
 		return val;
 	}
 
+	/**
+	 * Gets the state of the caches, e.g. to check how many requests to the Open Route Service are saved.
+	 *
+	 * @return JSON formatted object with the {@code size}, {@code maxSize}, {@code hits}, {@code misses} and
+	 * {@code evictions} of the {@code routeCache} (also {@code expirations} and {@code coalesced} requests),
+	 * {@code carCache} and {@code unknownCarIdCache}, the {@code calls} and {@code coalesced} calls of the
+	 * {@code placeSearches}, the {@code geocodeCache} (also {@code prefixHits} answered from the results of a shorter
+	 * query), and the concurrency {@code limit}, requests {@code inFlight}, {@code accepted} and
+	 * {@code rejected} requests and the {@code circuitState} of {@code openRouteService}
+	 */
+	@POST
+	@Path("/getMetrics")
+	@Produces(MediaType.APPLICATION_JSON)
+	@Expose(scope = ActionScope.WEBSERVICE)
+	public String getMetrics() {
+		log.info("New method invocation - getMetrics() called");
+
+		ObjectMapper objectMapper = new ObjectMapper();
+		ObjectNode metrics = objectMapper.createObjectNode();
+
+		ObjectNode routes = metrics.putObject("routeCache");
+		routes.put("size", routeCache.size());
+		routes.put("maxSize", routeCache.getMaxSize());
+		routes.put("hits", routeCache.getHits());
+		routes.put("misses", routeCache.getMisses());
+		routes.put("expirations", routeCache.getExpirations());
+		routes.put("evictions", routeCache.getEvictions());
+		routes.put("coalesced", routeCache.getCoalesced());
+		ObjectNode searches = metrics.putObject("placeSearches");
+		searches.put("calls", Place.getSearches().getCalls());
+		searches.put("coalesced", Place.getSearches().getCoalesced());
+		ObjectNode geocodes = metrics.putObject("geocodeCache");
+		geocodes.put("size", geocodeCache.size());
+		geocodes.put("maxSize", geocodeCache.getMaxSize());
+		geocodes.put("hits", geocodeCache.getHits());
+		geocodes.put("prefixHits", geocodeCache.getPrefixHits());
+		geocodes.put("misses", geocodeCache.getMisses());
+		geocodes.put("expirations", geocodeCache.getExpirations());
+		geocodes.put("evictions", geocodeCache.getEvictions());
+		metrics.set("carCache", toJson(carResolver.getCarCache()));
+		metrics.set("unknownCarIdCache", toJson(carResolver.getUnknownIdCache()));
+		RestClient openRouteService = RestClient.OPEN_ROUTE_SERVICE.get();
+		if (openRouteService != null) metrics.set("openRouteService", toJson(openRouteService));
+
+		String val = null;
+		try {
+			val = objectMapper.writeValueAsString(metrics);
+		} catch (JsonProcessingException e) {
+			log.error(e.getMessage(), e);
+		}
+
+		return val;
+	}
+
+	private static ObjectNode toJson(RestClient restClient) {
+		AdaptiveLimiter limiter = restClient.getLimiter();
+		CircuitBreaker circuitBreaker = restClient.getCircuitBreaker();
+		ObjectNode node = new ObjectMapper().createObjectNode();
+		node.put("limit", limiter.getLimit());
+		node.put("maxLimit", limiter.getMaxLimit());
+		node.put("inFlight", limiter.getInFlight());
+		node.put("accepted", limiter.getAccepted());
+		node.put("rejected", limiter.getRejected() + circuitBreaker.getRejected());
+		node.put("limitDecreases", limiter.getDecreases());
+		node.put("circuitState", circuitBreaker.getState().name());
+		node.put("circuitTrips", circuitBreaker.getTrips());
+		return node;
+	}
+
+	private static ObjectNode toJson(LruCache<?, ?> cache) {
+		ObjectNode node = new ObjectMapper().createObjectNode();
+		node.put("size", cache.size());
+		node.put("maxSize", cache.getMaxSize());
+		node.put("hits", cache.getHits());
+		node.put("misses", cache.getMisses());
+		node.put("evictions", cache.getEvictions());
+		return node;
+	}
+
 
 	/***************************************************/
 	/******************* CAR-RELATED *******************/
@@ -282,7 +627,12 @@ public class VehicleCO2Calculator extends AbstractMethodExposingBean {
 	 *                   route where the maximum speed is between 50 and 100 km/h.
 	 * @param autobahnKM Travel distance in kilometers on highways. Note that this includes all parts of the route where
 	 *                   the maximum speed is above 100 km/h.
-	 * @return JSON formatted field containing the estimated CO2 emissions for the given car and the given start/end point.
+	 * @param departure  Optional departure time like {@code 2020-05-04T07:30:00Z}. Electric cars are then calculated with
+	 *                   the hourly carbon intensity of the mix during the trip, if there is a series for the mix.
+	 * @param uncertainty If {@code true}, the result also contains the 5th, 50th and 95th percentile of the emissions
+	 *                    ({@code carEmissionsBands}) for the uncertain real-world consumption and road classification.
+	 * @return JSON formatted field containing the estimated CO2 emissions for the given car and the given start/end point
+	 * and the {@code emissionFactorVersion} that was used.
 	 */
 	@POST
 	@Path("/calculateCarEmissionsByRouteLength")
@@ -292,41 +642,67 @@ public class VehicleCO2Calculator extends AbstractMethodExposingBean {
 	                                                 @QueryParam("mix") String mix,
 	                                                 @QueryParam("urbanKM") double urbanKM,
 	                                                 @QueryParam("nonUrbanKM") double nonUrbanKM,
-	                                                 @QueryParam("autobahnKM") double autobahnKM) {
+	                                                 @QueryParam("autobahnKM") double autobahnKM,
+	                                                 @QueryParam("departure") String departure,
+	                                                 @QueryParam("uncertainty") boolean uncertainty) {
 		log.info("New method invocation - calculateCarEmissionsByRouteLength(...) called");
 
-		Driver driver = null;
 		String val = null;
 
 		try {
 
+			EmissionCoefficients coefficients = getCoefficients();
+			EmissionFactorSet factors = coefficients.getFactors();
 
-			driver = new Driver(properties);
+			CarRoute carRoute = new CarRoute(urbanKM, nonUrbanKM, autobahnKM);
+			double emissions = calculateCarEmissions(carID, carRoute, mix, coefficients, departure);
 
+			ObjectMapper objectMapper = new ObjectMapper();
+			ObjectNode result = objectMapper.createObjectNode();
+			result.put("carEmissions", emissions);
+			if (uncertainty) result.set("carEmissionsBands", carEmissionsBands(carID, carRoute, mix, coefficients, departure));
+			result.put("emissionFactorVersion", factors.getVersion());
 
-			Car car = null;
+			val = objectMapper.writeValueAsString(result);
 
-			ArrayList<Car> genericCars = Car.getGenericCars();
-			for (Car genericCar : genericCars) {
-				if (genericCar.getId().equals(carID)) {
-					car = genericCar;
-					break;
-				}
-			}
+		} catch (Exception e) {
+			log.error(e.getMessage(), e);
+		}
 
+		return val;
+	}
 
-			if (car == null) car = driver.getCar(carID);
-			driver.close();
+	/**
+	 * Calculate the CO2 emissions of many cars and routes at once. Each row of {@code body} has the parameters of
+	 * {@code calculateCarEmissionsByRouteLength}, e.g.
+	 * {@code {"carID": "1", "mix": null, "urbanKM": 12.5, "nonUrbanKM": 30, "autobahnKM": 80}}.
+	 * All cars are looked up together, so this is much faster than calling {@code calculateCarEmissionsByRouteLength}
+	 * for each row.
+	 *
+	 * @param body JSON array of rows or one row per line (NDJSON)
+	 * @return JSON formatted list {@code results} with one result per row in the same order and the
+	 * {@code emissionFactorVersion} used for all rows. A result either has the field {@code carEmissions} or, if the row
+	 * can't be calculated (e.g. unknown {@code carID}), the field {@code error}.
+	 */
+	@POST
+	@Path("/calculateCarEmissionsBatch")
+	@Consumes({MediaType.APPLICATION_JSON, "application/x-ndjson"})
+	@Produces(MediaType.APPLICATION_JSON)
+	@Expose(scope = ActionScope.WEBSERVICE)
+	public String calculateCarEmissionsBatch(String body) {
+		log.info("New method invocation - calculateCarEmissionsBatch(...) called");
+		long start = System.nanoTime();
 
+		String val = null;
 
-			CarRoute carRoute = new CarRoute(urbanKM, nonUrbanKM, autobahnKM);
-			Double emissions = CO2Calculator.calculateCarEmissions(Objects.requireNonNull(car), carRoute, mix);
+		try {
 
-			ObjectMapper objectMapper = new ObjectMapper();
-			ObjectNode result = objectMapper.createObjectNode();
-			result.put("carEmissions", emissions);
+			EmissionCoefficients coefficients = getCoefficients();
+			EmissionsBatch batch = EmissionsBatch.parse(body, properties.getCalculationBatchMaxRows());
+			Map<String, Car> cars = carResolver.resolveAll(batch.getCarIds(coefficients));
+			val = batch.calculate(coefficients, cars);
 
-			val = objectMapper.writeValueAsString(result);
+			log.info("VehicleCO2Calculator - calculated " + batch.size() + " rows in " + (System.nanoTime() - start) / 1000000 + " ms");
 
 		} catch (Exception e) {
 			log.error(e.getMessage(), e);
@@ -348,10 +724,19 @@ public class VehicleCO2Calculator extends AbstractMethodExposingBean {
 	 * @param startLongitude       Longitude of the routes starting point
 	 * @param destinationLatitude  Latitude of the routes destination
 	 * @param destinationLongitude Longitude of the routes destination
+	 * @param departure            Optional departure time like {@code 2020-05-04T07:30:00Z}. Electric cars are then
+	 *                             calculated with the hourly carbon intensity of the mix during the trip.
+	 * @param uncertainty          If {@code true}, the result also contains the 5th, 50th and 95th percentile of both
+	 *                             estimates ({@code carEmissionsBands}, {@code publicTransportEmissionsBands}).
+	 * @param estimate             If {@code true}, the route is estimated from the distance between start and
+	 *                             destination without asking the Open Route Service, e.g. for bulk jobs.
 	 * @return JSON formatted field containing the estimated CO2 emissions for the given car and the given start/end point
-	 * and a very rough estimate of the corresponding emissions using public transport
+	 * and a very rough estimate of the corresponding emissions using public transport, the
+	 * {@code emissionFactorVersion} that was used and whether the route was estimated ({@code routeEstimated})
 	 * @implSpec This method uses information about the shortest route that is found by the Open Route Service API between
-	 * the start and the destination.
+	 * the start and the destination. The route is requested while the car is looked up; the request fails if either
+	 * takes longer than {@code RoutingDeadline} or {@code CarLookupDeadline}. If the route request fails and
+	 * {@code RouteEstimatorFallback} is set, the route is estimated instead.
 	 */
 	@POST
 	@Path("/calculateCarEmissionsByCoordinates")
@@ -362,45 +747,45 @@ public class VehicleCO2Calculator extends AbstractMethodExposingBean {
 	                                                 @QueryParam("startLatitude") double startLatitude,
 	                                                 @QueryParam("startLongitude") double startLongitude,
 	                                                 @QueryParam("destinationLatitude") double destinationLatitude,
-	                                                 @QueryParam("destinationLongitude") double destinationLongitude) {
+	                                                 @QueryParam("destinationLongitude") double destinationLongitude,
+	                                                 @QueryParam("departure") String departure,
+	                                                 @QueryParam("uncertainty") boolean uncertainty,
+	                                                 @QueryParam("estimate") boolean estimate) {
 		log.info("New method invocation - calculateCarEmissionsByCoordinates(...) called");
 
-		Driver driver = null;
 		String val = null;
 
 		try {
 
-			driver = new Driver(properties);
-
-
-			Car car = null;
-
-			ArrayList<Car> genericCars = Car.getGenericCars();
-			for (Car genericCar : genericCars) {
-				if (genericCar.getId().equals(carID)) {
-					car = genericCar;
-					break;
-				}
-			}
-
-			if (car == null) car = driver.getCar(carID);
-			driver.close();
-
+			EmissionCoefficients coefficients = getCoefficients();
+			EmissionFactorSet factors = coefficients.getFactors();
 
 			Place start = new Place(startLatitude, startLongitude);
 			Place destination = new Place(destinationLatitude, destinationLongitude);
-			CarRoute carRoute = new CarRoute(start, destination, properties);
 
-			Double emissions = CO2Calculator.calculateCarEmissions(Objects.requireNonNull(car), carRoute, mix);
+			// the route request and the car lookup don't depend on each other
+			CompletableFuture<CarRoute> routeFuture = getRoute(start, destination, estimate);
+			CompletableFuture<Car> carFuture = Futures.within(resolveCarAsync(carID, coefficients),
+					properties.getCarLookupDeadline(), "Car lookup");
+			CarRoute carRoute = Futures.await(routeFuture);
+			Car car = Futures.await(carFuture);
+
+			double emissions = calculateCarEmissions(carID, car, carRoute, mix, coefficients, departure);
 
 			// calculate public transport emissions
 			PublicTransportRoute route = new PublicTransportRoute(carRoute.getUrbanKM(), carRoute.getNonUrbanKM() + carRoute.getAutobahnKM());
-			Double ptEmissions = CO2Calculator.calculatePublicTransportEmissions(route);
+			double ptEmissions = CO2Calculator.calculatePublicTransportEmissions(route, factors);
 
 			ObjectMapper objectMapper = new ObjectMapper();
 			ObjectNode result = objectMapper.createObjectNode();
 			result.put("carEmissions", emissions);
 			result.put("publicTransportEmissions", ptEmissions);
+			if (uncertainty) {
+				result.set("carEmissionsBands", carEmissionsBands(carID, car, carRoute, mix, coefficients, departure));
+				result.set("publicTransportEmissionsBands", toJson(this.uncertainty.publicTransportEmissions(route, factors)));
+			}
+			result.put("emissionFactorVersion", factors.getVersion());
+			result.put("routeEstimated", carRoute.isEstimated());
 
 			val = objectMapper.writeValueAsString(result);
 		} catch (Exception e) {
@@ -410,6 +795,220 @@ public class VehicleCO2Calculator extends AbstractMethodExposingBean {
 		return val;
 	}
 
+	/**
+	 * Calculate the CO2 emissions of one or more cars on the routes from every origin to every destination, e.g. from
+	 * every depot to every customer of a fleet:
+	 * {@code {"carIDs": ["1", "2"], "mix": "de", "origins": [{"latitude": 52.5, "longitude": 13.4}],
+	 * "destinations": [{"latitude": 48.1, "longitude": 11.6}, ...]}}.
+	 * The routes are requested with a few matrix requests instead of one request per route, and every car is looked up
+	 * once.
+	 *
+	 * @param body JSON object with {@code carIDs}, {@code mix} (only needed for electric cars), {@code origins} and
+	 *             {@code destinations}
+	 * @return JSON formatted {@code distanceKM} and {@code durationSeconds} of the routes, one row per origin, and
+	 * {@code cars} with the {@code carEmissions} of every car in the same layout or an {@code error}. Cells without a
+	 * route are {@code null}. Also the number of {@code routingRequests}, of {@code routesEstimated} because their
+	 * request failed (if {@code RouteEstimatorFallback} is set) and the {@code emissionFactorVersion}.
+	 * @implSpec The matrix API of the Open Route Service only returns the length and duration of a route. The km per
+	 * road class are modelled from them, so the emissions are less precise than those of
+	 * {@code calculateCarEmissionsByCoordinates}.
+	 */
+	@POST
+	@Path("/calculateCarEmissionsMatrix")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	@Expose(scope = ActionScope.WEBSERVICE)
+	public String calculateCarEmissionsMatrix(String body) {
+		log.info("New method invocation - calculateCarEmissionsMatrix(...) called");
+
+		String val = null;
+
+		try {
+			ObjectMapper objectMapper = new ObjectMapper();
+			JsonNode request = objectMapper.readTree(body);
+			List<String> carIDs = new ArrayList<>();
+			for (JsonNode carID : request.path("carIDs")) carIDs.add(carID.asText());
+			String mix = request.hasNonNull("mix") ? request.get("mix").asText() : null;
+			List<Place> origins = toPlaces(request.path("origins"));
+			List<Place> destinations = toPlaces(request.path("destinations"));
+
+			if ((long) origins.size() * destinations.size() * Math.max(1, carIDs.size()) > properties.getCalculationBatchMaxRows()) {
+				throw new IllegalArgumentException("More than CalculationBatchMaxRows (" + properties.getCalculationBatchMaxRows()
+						+ ") emissions requested");
+			}
+
+			EmissionCoefficients coefficients = getCoefficients();
+			List<String> missing = new ArrayList<>();
+			for (String carID : carIDs) if (coefficients.indexOf(carID) < 0) missing.add(carID);
+			Map<String, Car> cars = carResolver.resolveAll(missing);
+
+			RouteMatrix matrix = RouteMatrix.calculate(origins, destinations, routeEstimator, properties);
+
+			ObjectNode result = objectMapper.createObjectNode();
+			ArrayNode distances = result.putArray("distanceKM");
+			ArrayNode durations = result.putArray("durationSeconds");
+			for (int origin = 0; origin < matrix.getOrigins(); origin++) {
+				ArrayNode distanceRow = distances.addArray();
+				ArrayNode durationRow = durations.addArray();
+				for (int destination = 0; destination < matrix.getDestinations(); destination++) {
+					CarRoute route = matrix.getRoute(origin, destination);
+					if (route == null) {
+						distanceRow.addNull();
+						durationRow.addNull();
+					} else {
+						distanceRow.add(route.getUrbanKM() + route.getNonUrbanKM() + route.getAutobahnKM());
+						durationRow.add(route.getDurationSeconds());
+					}
+				}
+			}
+
+			ArrayNode carResults = result.putArray("cars");
+			for (String carID : carIDs) {
+				ObjectNode carResult = carResults.addObject().put("carID", carID);
+				Car car = cars.get(carID);
+				if (car == null && coefficients.indexOf(carID) < 0) {
+					carResult.put("error", "Unknown carID");
+					continue;
+				}
+
+				try {
+					ArrayNode emissions = objectMapper.createArrayNode();
+					for (int origin = 0; origin < matrix.getOrigins(); origin++) {
+						ArrayNode row = emissions.addArray();
+						for (int destination = 0; destination < matrix.getDestinations(); destination++) {
+							CarRoute route = matrix.getRoute(origin, destination);
+							if (route == null) row.addNull();
+							else row.add(calculateCarEmissions(carID, car, route, mix, coefficients, null));
+						}
+					}
+					carResult.set("carEmissions", emissions);
+				} catch (IllegalArgumentException e) {
+					carResult.put("error", e.getMessage());
+				}
+			}
+
+			result.put("routingRequests", matrix.getRequests());
+			result.put("routesEstimated", matrix.getEstimated());
+			result.put("emissionFactorVersion", coefficients.getFactors().getVersion());
+
+			val = objectMapper.writeValueAsString(result);
+		} catch (Exception e) {
+			log.error(e.getMessage(), e);
+		}
+
+		return val;
+	}
+
+	private static List<Place> toPlaces(JsonNode places) {
+		List<Place> list = new ArrayList<>();
+		for (JsonNode place : places) {
+			if (!place.path("latitude").isNumber() || !place.path("longitude").isNumber()) {
+				throw new IllegalArgumentException("Every place needs a numeric latitude and longitude");
+			}
+			list.add(new Place(place.get("latitude").asDouble(), place.get("longitude").asDouble()));
+		}
+		return list;
+	}
+
+	/**
+	 * Rank all cars of the database by their CO2 emissions on a route that is given by the {@code urbanKM},
+	 * {@code nonUrbanKM} and {@code autobahnKM} parameters, e.g. to find the models that emit least on a commute.
+	 * Electric cars are only ranked if an electricity mix ({@code mix}) is given.
+	 *
+	 * @param mix        Electricity mix for electric cars or {@code null} to leave them out
+	 * @param urbanKM    Travel distance in kilometers within urban areas
+	 * @param nonUrbanKM Travel distance in kilometers within non-urban areas
+	 * @param autobahnKM Travel distance in kilometers on highways
+	 * @param brand      Only cars of this brand, {@code null} for all brands
+	 * @param fuel       Only cars with this fuel, {@code null} for all fuel types
+	 * @param limit      Number of cars to return, 10 if not given. At most {@code RankingMaxResults}.
+	 * @return JSON formatted list {@code cars} with id, brand, model, fuel and {@code carEmissions} of the cars with the
+	 * lowest emissions, lowest first, and the {@code emissionFactorVersion} that was used
+	 */
+	@POST
+	@Path("/rankCarsByRouteLength")
+	@Produces(MediaType.APPLICATION_JSON)
+	@Expose(scope = ActionScope.WEBSERVICE)
+	public String rankCarsByRouteLength(@QueryParam("mix") String mix,
+	                                    @QueryParam("urbanKM") double urbanKM,
+	                                    @QueryParam("nonUrbanKM") double nonUrbanKM,
+	                                    @QueryParam("autobahnKM") double autobahnKM,
+	                                    @QueryParam("brand") String brand,
+	                                    @QueryParam("fuel") String fuel,
+	                                    @QueryParam("limit") int limit) {
+		log.info("New method invocation - rankCarsByRouteLength(...) called");
+
+		String val = null;
+
+		try {
+			val = rankCars(new CarRoute(urbanKM, nonUrbanKM, autobahnKM), mix, brand, fuel, limit);
+		} catch (Exception e) {
+			log.error(e.getMessage(), e);
+		}
+
+		return val;
+	}
+
+	/**
+	 * Rank all cars of the database by their CO2 emissions on the shortest route between a start and a destination.
+	 * See {@code rankCarsByRouteLength} and {@code calculateCarEmissionsByCoordinates} for the parameters.
+	 *
+	 * @return JSON formatted list {@code cars} with id, brand, model, fuel and {@code carEmissions} of the cars with the
+	 * lowest emissions, lowest first, the {@code emissionFactorVersion} that was used and whether the route was
+	 * estimated ({@code routeEstimated})
+	 */
+	@POST
+	@Path("/rankCarsByCoordinates")
+	@Produces(MediaType.APPLICATION_JSON)
+	@Expose(scope = ActionScope.WEBSERVICE)
+	public String rankCarsByCoordinates(@QueryParam("mix") String mix,
+	                                    @QueryParam("startLatitude") double startLatitude,
+	                                    @QueryParam("startLongitude") double startLongitude,
+	                                    @QueryParam("destinationLatitude") double destinationLatitude,
+	                                    @QueryParam("destinationLongitude") double destinationLongitude,
+	                                    @QueryParam("brand") String brand,
+	                                    @QueryParam("fuel") String fuel,
+	                                    @QueryParam("limit") int limit,
+	                                    @QueryParam("estimate") boolean estimate) {
+		log.info("New method invocation - rankCarsByCoordinates(...) called");
+
+		String val = null;
+
+		try {
+			Place start = new Place(startLatitude, startLongitude);
+			Place destination = new Place(destinationLatitude, destinationLongitude);
+			val = rankCars(Futures.await(getRoute(start, destination, estimate)), mix, brand, fuel, limit);
+		} catch (Exception e) {
+			log.error(e.getMessage(), e);
+		}
+
+		return val;
+	}
+
+	private String rankCars(CarRoute carRoute, String mix, String brand, String fuel, int limit) throws JsonProcessingException {
+		EmissionCoefficients coefficients = getCoefficients();
+		int size = Math.min(limit > 0 ? limit : 10, properties.getRankingMaxResults());
+
+		EmissionRanking.Result ranking = new EmissionRanking(coefficients, ElectricityMix.fromName(mix), carRoute.getUrbanKM(),
+				carRoute.getNonUrbanKM(), carRoute.getAutobahnKM(), brand, fuel == null ? null : FuelType.fromName(fuel), size).rank();
+
+		ObjectMapper objectMapper = new ObjectMapper();
+		ObjectNode result = objectMapper.createObjectNode();
+		ArrayNode cars = result.putArray("cars");
+		for (int rank = 0; rank < ranking.size(); rank++) {
+			cars.addObject()
+					.put("id", ranking.getId(rank))
+					.put("brand", ranking.getBrand(rank))
+					.put("model", ranking.getModel(rank))
+					.put("fuel", ranking.getFuel(rank).getName())
+					.put("carEmissions", ranking.getEmissions(rank));
+		}
+		result.put("emissionFactorVersion", coefficients.getFactors().getVersion());
+		result.put("routeEstimated", carRoute.isEstimated());
+
+		return objectMapper.writeValueAsString(result);
+	}
+
 	/**
 	 * Calculate the CO2 emissions for using public transport (excluding air traffic) on a route, that consists of
 	 * {@code shortDistanceKM} kilometers short distance transportation (local bus traffic, underground and [sub]urban railway)
@@ -418,22 +1017,28 @@ public class VehicleCO2Calculator extends AbstractMethodExposingBean {
 	 *
 	 * @param shortDistanceKM Travel distance in kilometers using local bus traffic, underground and [sub]urban railway
 	 * @param longDistanceKM  Travel distance in kilometers using regional trains and mainline rail services.
-	 * @return Estimated CO2 emissions for the given route information
+	 * @param uncertainty     If {@code true}, the result also contains the 5th, 50th and 95th percentile of the
+	 *                        emissions ({@code publicTransportEmissionsBands}) for the uncertain share of buses.
+	 * @return Estimated CO2 emissions for the given route information and the {@code emissionFactorVersion} that was used
 	 */
 	@POST
 	@Path("/calculatePublicTransportEmissions")
 	@Produces(MediaType.APPLICATION_JSON)
 	@Expose(scope = ActionScope.WEBSERVICE)
 	public String calculatePublicTransportEmissions(@QueryParam("shortDistanceKM") double shortDistanceKM,
-	                                                @QueryParam("longDistanceKM") double longDistanceKM) {
+	                                                @QueryParam("longDistanceKM") double longDistanceKM,
+	                                                @QueryParam("uncertainty") boolean uncertainty) {
 		log.info("New method invocation - calculatePublicTransportEmissions(...) called");
 
+		EmissionFactorSet factors = CO2EmissionFactors.getFactorSet();
 		PublicTransportRoute route = new PublicTransportRoute(shortDistanceKM, longDistanceKM);
-		Double emissions = CO2Calculator.calculatePublicTransportEmissions(route);
+		double emissions = CO2Calculator.calculatePublicTransportEmissions(route, factors);
 
 		ObjectMapper objectMapper = new ObjectMapper();
 		ObjectNode result = objectMapper.createObjectNode();
 		result.put("publicTransportEmissions", emissions);
+		if (uncertainty) result.set("publicTransportEmissionsBands", toJson(this.uncertainty.publicTransportEmissions(route, factors)));
+		result.put("emissionFactorVersion", factors.getVersion());
 
 		String val = null;
 		try {
@@ -466,7 +1071,7 @@ public class VehicleCO2Calculator extends AbstractMethodExposingBean {
 		JsonNode places = null;
 		String val = null;
 		try {
-			places = Place.searchPlace(query, properties);
+			places = geocodeCache.search(query);
 
 			ObjectMapper objectMapper = new ObjectMapper();
 			val = objectMapper.writeValueAsString(places);
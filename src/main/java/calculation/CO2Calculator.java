@@ -1,57 +1,105 @@
-package calculation;
-
-import car.Car;
-import routing.CarRoute;
-import routing.PublicTransportRoute;
-
-import static publictransport.PublicTransportConsumption.*;
-
-public class CO2Calculator {
-
-	private static final double IC_SHARE = 0.273; // market share of IC/EC vehicle class in total long-distance rail transport
-	private static final double LOCAL_BUS_SHARE = 0.5; // market share of bus service in total short-distance public transport (random number, not based on anything)
-
-	/**
-	 * @param car Car object that includes consumption data
-	 * @param route CarRoute object that includes route section lengths
-	 * @param mix Electricity mix. If the car is not electric: mix = null
-	 * @return Combined CO2 emissions for this car and this route
-	 */
-	public static double calculateCarEmissions(Car car, CarRoute route, String mix) {
-		// calculate consumption for each part of the route
-		Double urbanConsumption = (car.getUrbanConsumption() / 100) * route.getUrbanKM();
-		Double nonUrbanConsumption = (car.getNonUrbanConsumption() / 100) * route.getNonUrbanKM();
-		Double autobahnConsumption = (car.getAutobahnConsumption() / 100) * route.getAutobahnKM();
-
-		// calculate total consumption
-		double totalConsumption = urbanConsumption + nonUrbanConsumption + autobahnConsumption;
-
-		if (car.isElectric()) return totalConsumption * CO2EmissionFactors.combinedEmissionFactor(car.getFuel(), mix);
-		else return totalConsumption * CO2EmissionFactors.combinedEmissionFactor(car.getFuel());
-	}
-
-	/**
-	 * @param route PublicTransportRoute object that includes route section lengths
-	 * @return Combined CO2 emissions for short- and long-travel public transport
-	 */
-	public static double calculatePublicTransportEmissions(PublicTransportRoute route) {
-		// local public transport (short-distance)
-		double busConsumption = (LOCAL_BUS_SHARE * route.getShortDistanceKM()) * publicTransportConsumption("sd", "bus", "diesel");
-		double busEmissions = busConsumption * CO2EmissionFactors.combinedEmissionFactor("diesel");
-
-		double trainConsumption = ((1 - LOCAL_BUS_SHARE) * route.getShortDistanceKM()) * publicTransportConsumption("sd", "train", "electricity");
-		double trainEmissions = (trainConsumption / 1000) * CO2EmissionFactors.combinedEmissionFactor("electricity", "db_nah");
-
-		double sdEmissions = busEmissions + trainEmissions;
-
-		// long-distance public transport
-		double iceConsumption = (((1 - IC_SHARE) * route.getLongDistanceKM()) * publicTransportConsumption("ld", "ice", "electricity"));
-		double icConsumption = ((IC_SHARE * route.getLongDistanceKM()) * publicTransportConsumption("ld", "ic", "electricity"));
-
-		double ldEmissions = ((iceConsumption + icConsumption) / 1000) * CO2EmissionFactors.combinedEmissionFactor("electricity", "db_fern");
-
-		// combine emissions
-		return sdEmissions + ldEmissions;
-	}
-
-}
+package calculation;
+
+import car.Car;
+import car.FuelType;
+import routing.CarRoute;
+import routing.PublicTransportRoute;
+
+import static publictransport.PublicTransportConsumption.DistanceType;
+import static publictransport.PublicTransportConsumption.VehicleClass;
+import static publictransport.PublicTransportConsumption.publicTransportConsumption;
+
+public class CO2Calculator {
+
+	private static final double IC_SHARE = 0.273; // market share of IC/EC vehicle class in total long-distance rail transport
+	private static final double LOCAL_BUS_SHARE = 0.5; // market share of bus service in total short-distance public transport (random number, not based on anything)
+
+	/**
+	 * @param car Car object that includes consumption data
+	 * @param route CarRoute object that includes route section lengths
+	 * @param mix Electricity mix. If the car is not electric: mix = null
+	 * @return Combined CO2 emissions for this car and this route
+	 */
+	public static double calculateCarEmissions(Car car, CarRoute route, ElectricityMix mix) {
+		return calculateCarEmissions(car, route, mix, CO2EmissionFactors.getFactorSet());
+	}
+
+	/**
+	 * Same as {@link #calculateCarEmissions(Car, CarRoute, ElectricityMix)} with the given emission factors.
+	 */
+	public static double calculateCarEmissions(Car car, CarRoute route, ElectricityMix mix, EmissionFactorSet factors) {
+		return calculateCarEmissions(car, route.getUrbanKM(), route.getNonUrbanKM(), route.getAutobahnKM(), mix, factors);
+	}
+
+	/**
+	 * Same as {@link #calculateCarEmissions(Car, CarRoute, ElectricityMix, EmissionFactorSet)} without a route object,
+	 * for batches.
+	 */
+	public static double calculateCarEmissions(Car car, double urbanKM, double nonUrbanKM, double autobahnKM, ElectricityMix mix, EmissionFactorSet factors) {
+		// calculate consumption for each part of the route
+		double urbanConsumption = (car.getUrbanConsumption() / 100) * urbanKM;
+		double nonUrbanConsumption = (car.getNonUrbanConsumption() / 100) * nonUrbanKM;
+		double autobahnConsumption = (car.getAutobahnConsumption() / 100) * autobahnKM;
+
+		// calculate total consumption
+		double totalConsumption = urbanConsumption + nonUrbanConsumption + autobahnConsumption;
+
+		return totalConsumption * factors.combined(car.getFuel(), mix);
+	}
+
+	/**
+	 * Same as {@link #calculateCarEmissions(Car, double, double, double, ElectricityMix, EmissionFactorSet)}, but
+	 * electric cars are calculated with the carbon intensity of the electricity at the time of the trip.
+	 *
+	 * @see CO2EmissionFactors#electricityEmissionFactor(ElectricityMix, long, double, EmissionFactorSet)
+	 */
+	public static double calculateCarEmissions(Car car, double urbanKM, double nonUrbanKM, double autobahnKM, ElectricityMix mix,
+											   EmissionFactorSet factors, long departureEpochSecond, double durationSeconds) {
+		if (!car.isElectric()) return calculateCarEmissions(car, urbanKM, nonUrbanKM, autobahnKM, mix, factors);
+		if (mix == null) throw new IllegalArgumentException("No argument 'mix' for electric engine");
+
+		double totalConsumption = (car.getUrbanConsumption() / 100) * urbanKM + (car.getNonUrbanConsumption() / 100) * nonUrbanKM
+				+ (car.getAutobahnConsumption() / 100) * autobahnKM;
+		return totalConsumption * CO2EmissionFactors.electricityEmissionFactor(mix, departureEpochSecond, durationSeconds, factors);
+	}
+
+	/**
+	 * @param route PublicTransportRoute object that includes route section lengths
+	 * @return Combined CO2 emissions for short- and long-travel public transport
+	 */
+	public static double calculatePublicTransportEmissions(PublicTransportRoute route) {
+		return calculatePublicTransportEmissions(route, CO2EmissionFactors.getFactorSet());
+	}
+
+	/**
+	 * Same as {@link #calculatePublicTransportEmissions(PublicTransportRoute)} with the given emission factors.
+	 */
+	public static double calculatePublicTransportEmissions(PublicTransportRoute route, EmissionFactorSet factors) {
+		return calculatePublicTransportEmissions(route, factors, LOCAL_BUS_SHARE);
+	}
+
+	/**
+	 * Same as {@link #calculatePublicTransportEmissions(PublicTransportRoute, EmissionFactorSet)} with another market
+	 * share of buses in short-distance public transport.
+	 */
+	public static double calculatePublicTransportEmissions(PublicTransportRoute route, EmissionFactorSet factors, double localBusShare) {
+		// local public transport (short-distance)
+		double busConsumption = (localBusShare * route.getShortDistanceKM()) * publicTransportConsumption(DistanceType.SHORT, VehicleClass.BUS, FuelType.DIESEL);
+		double busEmissions = busConsumption * factors.combined(FuelType.DIESEL, null);
+
+		double trainConsumption = ((1 - localBusShare) * route.getShortDistanceKM()) * publicTransportConsumption(DistanceType.SHORT, VehicleClass.TRAIN, FuelType.ELECTRICITY);
+		double trainEmissions = (trainConsumption / 1000) * factors.combined(FuelType.ELECTRICITY, ElectricityMix.DB_NAH);
+
+		double sdEmissions = busEmissions + trainEmissions;
+
+		// long-distance public transport
+		double iceConsumption = (((1 - IC_SHARE) * route.getLongDistanceKM()) * publicTransportConsumption(DistanceType.LONG, VehicleClass.ICE, FuelType.ELECTRICITY));
+		double icConsumption = ((IC_SHARE * route.getLongDistanceKM()) * publicTransportConsumption(DistanceType.LONG, VehicleClass.IC, FuelType.ELECTRICITY));
+
+		double ldEmissions = ((iceConsumption + icConsumption) / 1000) * factors.combined(FuelType.ELECTRICITY, ElectricityMix.DB_FERN);
+
+		// combine emissions
+		return sdEmissions + ldEmissions;
+	}
+
+}
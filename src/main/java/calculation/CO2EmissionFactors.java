@@ -1,134 +1,151 @@
-package calculation;
-
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-
-public class CO2EmissionFactors {
-
-	/********** EMISSION FACTORS **********/
-
-	/* Well-to-Tank (WtT) */
-
-	// in kg CO2/kg fuel:
-	private static final double WTT_PETROL 	= 0.46;
-	private static final double WTT_DIESEL	= 0.48;
-	private static final double WTT_LPG 	= 0.62;
-	private static final double WTT_CNG 	= 0.69;
-
-	// in kg CO2/kWh:
-	private static final double WTT_ELECTRICITY_DE 		= 0.548;
-	private static final double WTT_ELECTRICITY_DE_ECO 	= 0.019;
-	private static final double WTT_ELECTRICITY_DB_FERN = 0.003;
-	private static final double WTT_ELECTRICITY_DB_NAH 	= 0.556;
-
-	/* Tank-to-Wheel (TtW) */
-
-	// in kg CO2/kg fuel:
-	private static final double TTW_PETROL	= 3.183;
-	private static final double TTW_DIESEL	= 3.167;
-	private static final double TTW_LPG		= 3.024;
-	private static final double TTW_CNG 	= 2.786;
-
-
-	/********** METHODS **********/
-
-	public static ObjectNode getMixesAsJson() {
-		ObjectMapper objectMapper = new ObjectMapper();
-		ObjectNode objectNode = objectMapper.createObjectNode();
-		objectNode.putArray("mixes")
-				.add("de")
-				.add("de_eco");
-
-		return objectNode;
-	}
-
-	public static double combinedEmissionFactor(String engine) {
-		return combinedEmissionFactor(engine, null);
-	}
-
-	public static double combinedEmissionFactor(String engine, String mix) {
-		return emissionFactor("wtt", engine, mix) + emissionFactor("ttw", engine, mix);
-	}
-
-	public static double emissionFactor(String type, String engine) throws IllegalArgumentException {
-		return emissionFactor(type, engine, null);
-	}
-
-	/**
-	 * @param type 'wtt' (Well-to-Tank) or 'ttw' (Tank-to-Wheel)
-	 * @param engine What powers the engine? 'petrol', 'diesel', 'lpg', 'cng' or 'electricity'
-	 * @param mix Which electricity mix is used? 'de' (Germany), 'de_eco' (green electricity Germany), 'db_fern' (Deutsche Bahn long-distance) or 'db_nah' (Deutsche Bahn short-distance)
-	 * @return CO2 Emission Factor depending on type, engine and mix
-	 * @throws IllegalArgumentException If at least one argument doesn't match the parameters specification
-	 */
-	public static double emissionFactor(String type, String engine, String mix) throws IllegalArgumentException {
-		checkArguments(type, engine, mix);
-
-		if (type.equals("wtt")) return getWttEmissionFactor(engine, mix);
-		return getTtwEmissionFactor(engine);
-	}
-
-	private static void checkArguments(String type, String engine, String mix) {
-		// check for wrong arguments
-		if (!type.equals("wtt") && !type.equals("ttw")) {
-			throw new IllegalArgumentException("Parameter 'type' must be 'wtt' or 'ttw'");
-		}
-
-		if (!engine.equals("petrol") && !engine.equals("diesel") && !engine.equals("lpg") && !engine.equals("cng") && !engine.equals("electricity")) {
-			throw new IllegalArgumentException("Parameter 'engine' must be 'petrol', 'diesel', 'lpg', 'cng' or 'electricity'");
-		}
-
-		if (mix != null && !mix.equals("de") && !mix.equals("de_eco") && !mix.equals("db_fern") && !mix.equals("db_nah")) {
-			throw new IllegalArgumentException("Parameter 'mix' must be 'de', 'de_eco', 'db_fern' or 'db_nah'");
-		}
-
-		if (engine.equals("electricity") && mix == null) {
-			throw new IllegalArgumentException("No argument 'mix' for electric engine");
-		}
-
-	}
-
-	private static double getWttEmissionFactor(String engine, String mix) {
-		switch (engine) {
-			case "petrol":
-				return WTT_PETROL;
-			case "diesel":
-				return WTT_DIESEL;
-			case "lpg":
-				return WTT_LPG;
-			case "cng":
-				return WTT_CNG;
-			case "electricity":
-				switch (mix) {
-					case "de":
-						return WTT_ELECTRICITY_DE;
-					case "de_eco":
-						return WTT_ELECTRICITY_DE_ECO;
-					case "db_fern":
-						return WTT_ELECTRICITY_DB_FERN;
-					case "db_nah":
-						return WTT_ELECTRICITY_DB_NAH;
-				}
-		}
-
-		return 0;
-	}
-
-	private static double getTtwEmissionFactor(String engine) {
-		switch (engine) {
-			case "petrol":
-				return TTW_PETROL;
-			case "diesel":
-				return TTW_DIESEL;
-			case "lpg":
-				return TTW_LPG;
-			case "cng":
-				return TTW_CNG;
-			case "electricity":
-				return 0.0;
-		}
-
-		return 0;
-	}
-
-}
+package calculation;
+
+import car.FuelType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CO2EmissionFactors {
+
+	/********** EMISSION FACTORS **********/
+
+	// bundled factors, used unless EmissionFactorsFile is set
+	private static final String DEFAULT_FACTORS = "/emission-factors.properties";
+
+	private static final AtomicReference<EmissionFactorSet> FACTORS = new AtomicReference<>(loadDefault());
+
+	private static EmissionFactorSet loadDefault() {
+		try (InputStream inputStream = CO2EmissionFactors.class.getResourceAsStream(DEFAULT_FACTORS)) {
+			return EmissionFactorSet.load(Objects.requireNonNull(inputStream, DEFAULT_FACTORS + " not found"), DEFAULT_FACTORS);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return the factors that are currently used. Take them once per calculation to get consistent results while
+	 * they are replaced.
+	 */
+	public static EmissionFactorSet getFactorSet() {
+		return FACTORS.get();
+	}
+
+	/**
+	 * Replaces the factors for all following calculations.
+	 *
+	 * @return the replaced factors
+	 */
+	public static EmissionFactorSet setFactorSet(EmissionFactorSet factors) {
+		return FACTORS.getAndSet(Objects.requireNonNull(factors));
+	}
+
+	/**
+	 * Loads and validates the factors of a file and uses them for all following calculations. The current factors
+	 * stay in use if the file is invalid.
+	 */
+	public static EmissionFactorSet load(Path file) throws IOException {
+		EmissionFactorSet factors;
+		try (InputStream inputStream = Files.newInputStream(file)) {
+			factors = EmissionFactorSet.load(inputStream, file.toString());
+		}
+		setFactorSet(factors);
+		return factors;
+	}
+
+
+	/* Hourly carbon intensity of the electricity mixes, by mix ordinal, null where there is no series */
+
+	private static final AtomicReference<CarbonIntensitySeries[]> CARBON_INTENSITY =
+			new AtomicReference<>(new CarbonIntensitySeries[ElectricityMix.values().length]);
+
+	/**
+	 * Loads the hourly carbon intensity series {@code <mix>.csv} (e.g. {@code de.csv}) that exist in the directory and
+	 * uses them for all following calculations with a departure time. Mixes without a file use their static factor.
+	 * The current series stay in use if a file is invalid.
+	 *
+	 * @return number of loaded series
+	 */
+	public static int loadCarbonIntensity(Path directory) throws IOException {
+		CarbonIntensitySeries[] series = new CarbonIntensitySeries[ElectricityMix.values().length];
+		int loaded = 0;
+		for (ElectricityMix mix : ElectricityMix.values()) {
+			Path file = directory.resolve(mix.getName() + ".csv");
+			if (Files.exists(file)) {
+				series[mix.ordinal()] = CarbonIntensitySeries.load(file);
+				loaded++;
+			}
+		}
+		CARBON_INTENSITY.set(series);
+		return loaded;
+	}
+
+	/**
+	 * @return the hourly carbon intensity of the mix or {@code null} if there is none
+	 */
+	public static CarbonIntensitySeries getCarbonIntensity(ElectricityMix mix) {
+		return CARBON_INTENSITY.get()[mix.ordinal()];
+	}
+
+	/**
+	 * Well-to-Tank factor of electricity for a trip, weighted by the time spent in each hour. Falls back to the static
+	 * factor of the mix for hours without data.
+	 *
+	 * @param mix                  Which electricity mix is used?
+	 * @param departureEpochSecond Start of the trip
+	 * @param durationSeconds      Duration of the trip
+	 * @return CO2 Emission Factor in kg CO2/kWh
+	 * @throws IllegalArgumentException If no mix is given
+	 */
+	public static double electricityEmissionFactor(ElectricityMix mix, long departureEpochSecond, double durationSeconds, EmissionFactorSet factors) throws IllegalArgumentException {
+		double staticFactor = factors.wtt(FuelType.ELECTRICITY, mix);
+		CarbonIntensitySeries series = CARBON_INTENSITY.get()[mix.ordinal()];
+		return series == null ? staticFactor : series.averageIntensity(departureEpochSecond, durationSeconds, staticFactor);
+	}
+
+
+	/********** METHODS **********/
+
+	public static ObjectNode getMixesAsJson() {
+		ObjectMapper objectMapper = new ObjectMapper();
+		ObjectNode objectNode = objectMapper.createObjectNode();
+		objectNode.putArray("mixes")
+				.add(ElectricityMix.DE.getName())
+				.add(ElectricityMix.DE_ECO.getName());
+
+		return objectNode;
+	}
+
+	public static double combinedEmissionFactor(FuelType engine) {
+		return combinedEmissionFactor(engine, null);
+	}
+
+	public static double combinedEmissionFactor(FuelType engine, ElectricityMix mix) {
+		return FACTORS.get().combined(engine, mix);
+	}
+
+	/**
+	 * @param engine What powers the engine?
+	 * @param mix Which electricity mix is used? Only needed for {@link FuelType#ELECTRICITY}, otherwise ignored
+	 * @return Well-to-Tank CO2 Emission Factor in kg CO2/kg fuel or kg CO2/kWh
+	 * @throws IllegalArgumentException If the engine is electric, but no mix is given
+	 */
+	public static double wttEmissionFactor(FuelType engine, ElectricityMix mix) throws IllegalArgumentException {
+		return FACTORS.get().wtt(engine, mix);
+	}
+
+	/**
+	 * @param engine What powers the engine?
+	 * @return Tank-to-Wheel CO2 Emission Factor in kg CO2/kg fuel, 0 for electricity
+	 */
+	public static double ttwEmissionFactor(FuelType engine) {
+		return FACTORS.get().ttw(engine);
+	}
+
+}
@@ -0,0 +1,143 @@
+package calculation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * Hourly carbon intensity of an electricity mix in kg CO2/kWh, read from a file with one line per hour:
+ * <pre>
+ * # comment
+ * 2020-01-01T00:00:00Z;0.512
+ * 2020-01-01T01:00:00Z;0.498
+ * </pre>
+ * The hours must be consecutive. Only the prefix sums of the hourly values are kept (8 bytes per hour, about 70 KB per
+ * year), so the time-weighted intensity of any period is calculated in constant time without allocating.
+ */
+public class CarbonIntensitySeries {
+
+	private static final int SECONDS_PER_HOUR = 3600;
+
+	private final String source;
+	private final long startEpochSecond;
+
+	// prefix[i] is the sum of the first i hourly values
+	private final double[] prefix;
+
+	private CarbonIntensitySeries(String source, long startEpochSecond, double[] prefix) {
+		this.source = source;
+		this.startEpochSecond = startEpochSecond;
+		this.prefix = prefix;
+	}
+
+	/**
+	 * @throws IOException if the file can't be read, a line is malformed, an intensity is negative or the hours are
+	 *                     not consecutive
+	 */
+	public static CarbonIntensitySeries load(Path file) throws IOException {
+		long start = 0;
+		double[] prefix = new double[8761];
+		int hours = 0;
+		int lineNumber = 0;
+
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) continue;
+
+				int separator = line.indexOf(';');
+				if (separator < 0) throw new IOException(file + ":" + lineNumber + ": expected '<hour>;<kg CO2/kWh>'");
+
+				long epochSecond;
+				double intensity;
+				try {
+					epochSecond = Instant.parse(line.substring(0, separator).trim()).getEpochSecond();
+					intensity = Double.parseDouble(line.substring(separator + 1).trim());
+				} catch (DateTimeParseException | NumberFormatException e) {
+					throw new IOException(file + ":" + lineNumber + ": " + e.getMessage());
+				}
+
+				if (hours == 0) {
+					if (epochSecond % SECONDS_PER_HOUR != 0) throw new IOException(file + ":" + lineNumber + ": not a full hour");
+					start = epochSecond;
+				} else if (epochSecond != start + (long) hours * SECONDS_PER_HOUR) {
+					throw new IOException(file + ":" + lineNumber + ": hours must be consecutive");
+				}
+				if (!(intensity >= 0) || Double.isInfinite(intensity)) {
+					throw new IOException(file + ":" + lineNumber + ": intensity must be a finite number >= 0");
+				}
+
+				if (hours + 1 == prefix.length) prefix = Arrays.copyOf(prefix, prefix.length * 2);
+				prefix[hours + 1] = prefix[hours] + intensity;
+				hours++;
+			}
+		}
+
+		if (hours == 0) throw new IOException(file + ": no hourly values");
+		return new CarbonIntensitySeries(file.toString(), start, Arrays.copyOf(prefix, hours + 1));
+	}
+
+	/**
+	 * @param departureEpochSecond start of the period
+	 * @param durationSeconds      length of the period, 0 for the intensity at the departure
+	 * @param fallback             intensity for the parts of the period that are not covered by this series
+	 * @return the time-weighted average intensity of the period in kg CO2/kWh
+	 */
+	public double averageIntensity(long departureEpochSecond, double durationSeconds, double fallback) {
+		double from = (double) (departureEpochSecond - startEpochSecond) / SECONDS_PER_HOUR;
+		if (durationSeconds <= 0) return intensity(from, fallback);
+
+		double to = from + durationSeconds / SECONDS_PER_HOUR;
+		if (to <= 0 || from >= hours()) return fallback;
+		return (integral(to, fallback) - integral(from, fallback)) / (to - from);
+	}
+
+	// intensity at the given hour since the start
+	private double intensity(double hour, double fallback) {
+		if (hour < 0 || hour >= hours()) return fallback;
+		int index = (int) hour;
+		return prefix[index + 1] - prefix[index];
+	}
+
+	// integral of the intensity from the start to the given hour, negative before the start
+	private double integral(double hour, double fallback) {
+		if (hour <= 0) return hour * fallback;
+
+		int hours = hours();
+		if (hour >= hours) return prefix[hours] + (hour - hours) * fallback;
+
+		int index = (int) hour;
+		return prefix[index] + (hour - index) * (prefix[index + 1] - prefix[index]);
+	}
+
+	public int hours() {
+		return prefix.length - 1;
+	}
+
+	public Instant getStart() {
+		return Instant.ofEpochSecond(startEpochSecond);
+	}
+
+	/**
+	 * @return size in bytes of the hourly data
+	 */
+	public long getMemoryFootprint() {
+		return prefix.length * 8L;
+	}
+
+	@Override
+	public String toString() {
+		return "CarbonIntensitySeries{" +
+				"source=" + source +
+				", start=" + getStart() +
+				", hours=" + hours() +
+				'}';
+	}
+}
@@ -0,0 +1,49 @@
+package calculation;
+
+/**
+ * Electricity mixes with known emission factors. The name is the representation used by the REST API.
+ */
+public enum ElectricityMix {
+
+	DE("de"),              // Germany
+	DE_ECO("de_eco"),      // green electricity Germany
+	DB_FERN("db_fern"),    // Deutsche Bahn long-distance
+	DB_NAH("db_nah");      // Deutsche Bahn short-distance
+
+	private final String name;
+
+	ElectricityMix(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @param name 'de', 'de_eco', 'db_fern', 'db_nah' or {@code null}
+	 * @return the mix or {@code null} if no name is given
+	 * @throws IllegalArgumentException if the name doesn't match any mix
+	 */
+	public static ElectricityMix fromName(String name) throws IllegalArgumentException {
+		if (name == null) return null;
+
+		switch (name) {
+			case "de":
+				return DE;
+			case "de_eco":
+				return DE_ECO;
+			case "db_fern":
+				return DB_FERN;
+			case "db_nah":
+				return DB_NAH;
+		}
+
+		throw new IllegalArgumentException("Parameter 'mix' must be 'de', 'de_eco', 'db_fern' or 'db_nah'");
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,207 @@
+package calculation;
+
+import car.Car;
+import car.FuelType;
+import car.database.CarCatalog;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * CO2 emissions per km on urban, non-urban and autobahn roads of every car of a {@link CarCatalog} and of the generic
+ * cars, precomputed with one {@link EmissionFactorSet}. Calculating the emissions of a route is three multiply-adds.
+ * <p>
+ * Cars with fuel have one coefficient vector, electric cars one per {@link ElectricityMix} and one with their
+ * consumption in kWh per km for the hourly carbon intensity. All vectors are kept in one array; the start of the
+ * vectors of a car is found with its index.
+ */
+public class EmissionCoefficients {
+
+	private static final List<Car> GENERIC_CARS = Car.getGenericCars();
+	private static final int MIXES = ElectricityMix.values().length;
+
+	// coefficients of the last used catalog and factors
+	private static final AtomicReference<EmissionCoefficients> CURRENT = new AtomicReference<>();
+
+	private final CarCatalog catalog;
+	private final EmissionFactorSet factors;
+	private final Map<String, Integer> genericIndexes = new HashMap<>();
+
+	// start of the vectors of a car, bitwise inverted for electric cars
+	final int[] offsets;
+	final double[] coefficients;
+
+	// columns of the catalog cars for filtering: fuel ordinal and brand number (by case-insensitive name)
+	final byte[] fuels;
+	final int[] brands;
+	private final Map<String, Integer> brandNumbers = new HashMap<>();
+
+	private final long buildTimeMillis;
+
+	private EmissionCoefficients(CarCatalog catalog, EmissionFactorSet factors) {
+		long startTime = System.currentTimeMillis();
+		this.catalog = catalog;
+		this.factors = factors;
+
+		int catalogSize = catalog == null ? 0 : catalog.size();
+		this.offsets = new int[catalogSize + GENERIC_CARS.size()];
+		this.fuels = new byte[catalogSize];
+		this.brands = new int[catalogSize];
+		double[] values = new double[offsets.length * 3];
+		int size = 0;
+
+		for (int index = 0; index < offsets.length; index++) {
+			FuelType fuel;
+			double urban, nonUrban, autobahn;
+			if (index < catalogSize) {
+				fuel = catalog.getFuelType(index);
+				fuels[index] = (byte) fuel.ordinal();
+				brands[index] = brandNumbers.computeIfAbsent(brandKey(catalog.getBrand(index)), key -> brandNumbers.size());
+				urban = catalog.getUrbanConsumption(index);
+				nonUrban = catalog.getNonUrbanConsumption(index);
+				autobahn = catalog.getAutobahnConsumption(index);
+			} else {
+				Car car = GENERIC_CARS.get(index - catalogSize);
+				genericIndexes.put(car.getId(), index);
+				fuel = car.getFuel();
+				urban = car.getUrbanConsumption();
+				nonUrban = car.getNonUrbanConsumption();
+				autobahn = car.getAutobahnConsumption();
+			}
+
+			boolean electric = fuel == FuelType.ELECTRICITY;
+			int vectors = electric ? MIXES + 1 : 1;
+			if (size + vectors * 3 > values.length) values = Arrays.copyOf(values, Math.max(values.length * 2, size + vectors * 3));
+
+			offsets[index] = electric ? ~size : size;
+			for (int vector = 0; vector < vectors; vector++) {
+				double factor = !electric ? factors.combined(fuel, null) : vector < MIXES ? factors.combined(fuel, ElectricityMix.values()[vector]) : 1;
+				values[size++] = urban / 100 * factor;
+				values[size++] = nonUrban / 100 * factor;
+				values[size++] = autobahn / 100 * factor;
+			}
+		}
+
+		this.coefficients = Arrays.copyOf(values, size);
+		this.buildTimeMillis = System.currentTimeMillis() - startTime;
+	}
+
+	/**
+	 * @param catalog current catalog of the car repository, {@code null} for the generic cars only
+	 * @param factors current emission factors
+	 * @return the coefficients for the catalog and factors, built again only if one of them has changed
+	 */
+	public static EmissionCoefficients of(CarCatalog catalog, EmissionFactorSet factors) {
+		EmissionCoefficients current = CURRENT.get();
+		if (current != null && current.catalog == catalog && current.factors == factors) return current;
+
+		EmissionCoefficients coefficients = new EmissionCoefficients(catalog, factors);
+		CURRENT.set(coefficients);
+		return coefficients;
+	}
+
+	/**
+	 * @return index of the car for {@link #calculate(int, ElectricityMix, double, double, double)} or -1 if the car is
+	 * neither generic nor in the catalog
+	 */
+	public int indexOf(String carID) {
+		if (carID == null) return -1;
+
+		Integer genericIndex = genericIndexes.get(carID);
+		if (genericIndex != null) return genericIndex;
+		return catalog == null ? -1 : catalog.indexOf(carID);
+	}
+
+	/**
+	 * @param index Index of the car as returned by {@link #indexOf(String)}
+	 * @return {@code true} if the car needs an electricity mix
+	 */
+	public boolean isElectric(int index) {
+		return offsets[index] < 0;
+	}
+
+	/**
+	 * @param index Index of the car as returned by {@link #indexOf(String)}
+	 * @param mix   Electricity mix. Only needed for electric cars, otherwise ignored
+	 * @return Combined CO2 emissions for this car and this route
+	 * @throws IllegalArgumentException If the car is electric, but no mix is given
+	 */
+	public double calculate(int index, ElectricityMix mix, double urbanKM, double nonUrbanKM, double autobahnKM) throws IllegalArgumentException {
+		int offset = offsets[index];
+		if (offset < 0) {
+			if (mix == null) throw new IllegalArgumentException("No argument 'mix' for electric engine");
+			offset = ~offset + mix.ordinal() * 3;
+		}
+
+		return coefficients[offset] * urbanKM + coefficients[offset + 1] * nonUrbanKM + coefficients[offset + 2] * autobahnKM;
+	}
+
+	/**
+	 * Same as {@link #calculate(int, ElectricityMix, double, double, double)}, but electric cars are calculated with the
+	 * carbon intensity of the electricity at the time of the trip.
+	 *
+	 * @see CO2EmissionFactors#electricityEmissionFactor(ElectricityMix, long, double, EmissionFactorSet)
+	 */
+	public double calculate(int index, ElectricityMix mix, double urbanKM, double nonUrbanKM, double autobahnKM,
+							long departureEpochSecond, double durationSeconds) throws IllegalArgumentException {
+		int offset = offsets[index];
+		if (offset >= 0) return calculate(index, mix, urbanKM, nonUrbanKM, autobahnKM);
+		if (mix == null) throw new IllegalArgumentException("No argument 'mix' for electric engine");
+
+		offset = ~offset + MIXES * 3;
+		double consumption = coefficients[offset] * urbanKM + coefficients[offset + 1] * nonUrbanKM + coefficients[offset + 2] * autobahnKM;
+		return consumption * CO2EmissionFactors.electricityEmissionFactor(mix, departureEpochSecond, durationSeconds, factors);
+	}
+
+	/**
+	 * @return number of the brand for filtering or -1 if there are no cars of this brand in the catalog
+	 */
+	public int brandNumber(String brand) {
+		Integer number = brand == null ? null : brandNumbers.get(brandKey(brand));
+		return number == null ? -1 : number;
+	}
+
+	private static String brandKey(String brand) {
+		return brand.trim().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * @return the catalog of the cars between 0 and {@link #catalogSize()} or {@code null}
+	 */
+	public CarCatalog getCatalog() {
+		return catalog;
+	}
+
+	public int catalogSize() {
+		return fuels.length;
+	}
+
+	public EmissionFactorSet getFactors() {
+		return factors;
+	}
+
+	public long getBuildTimeMillis() {
+		return buildTimeMillis;
+	}
+
+	/**
+	 * @return size in bytes of the coefficient tables
+	 */
+	public long getMemoryFootprint() {
+		return coefficients.length * 8L + offsets.length * 4L + fuels.length + brands.length * 4L;
+	}
+
+	@Override
+	public String toString() {
+		return "EmissionCoefficients{" +
+				"cars=" + offsets.length +
+				", factors=" + factors.getVersion() +
+				", buildTimeMillis=" + buildTimeMillis +
+				", memoryFootprint=" + getMemoryFootprint() +
+				'}';
+	}
+}
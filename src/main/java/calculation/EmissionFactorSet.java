@@ -0,0 +1,142 @@
+package calculation;
+
+import car.FuelType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.InvalidPropertiesFormatException;
+import java.util.Properties;
+
+/**
+ * Immutable, validated set of CO2 emission factors with a version. The factors are read from a .properties file:
+ * <pre>
+ * version=2020.1
+ * wtt.&lt;fuel&gt;=...              (kg CO2/kg fuel, every fuel but electricity)
+ * wtt.electricity.&lt;mix&gt;=...    (kg CO2/kWh, every electricity mix)
+ * ttw.&lt;fuel&gt;=...              (kg CO2/kg fuel, every fuel but electricity)
+ * </pre>
+ * All factors are stored in tables with one entry per fuel type and electricity mix (or no mix), so a lookup is a
+ * single array read.
+ */
+public class EmissionFactorSet {
+
+	// one slot for "no mix" and one for each mix
+	private static final int MIX_SLOTS = ElectricityMix.values().length + 1;
+
+	private final String version;
+
+	// NaN where a factor is undefined (electricity without a mix)
+	private final double[] wtt;
+	private final double[] ttw;
+	private final double[] combined;
+
+	private EmissionFactorSet(String version, double[] wtt, double[] ttw) {
+		this.version = version;
+		this.wtt = wtt;
+		this.ttw = ttw;
+		this.combined = new double[wtt.length];
+		for (int i = 0; i < wtt.length; i++) combined[i] = wtt[i] + ttw[i];
+	}
+
+	/**
+	 * @param source name of the data for error messages
+	 * @throws InvalidPropertiesFormatException if the version or a factor is missing, a factor is negative or not a
+	 *                                          number, or there is a key that doesn't belong to any factor
+	 */
+	public static EmissionFactorSet load(InputStream inputStream, String source) throws IOException {
+		Properties properties = new Properties();
+		properties.load(inputStream);
+
+		String version = properties.getProperty("version");
+		if (version == null || version.trim().isEmpty()) {
+			throw new InvalidPropertiesFormatException(source + ": version is missing");
+		}
+
+		double[] wtt = new double[FuelType.values().length * MIX_SLOTS];
+		double[] ttw = new double[wtt.length];
+		int keys = 1;
+
+		for (FuelType fuel : FuelType.values()) {
+			if (fuel == FuelType.ELECTRICITY) {
+				wtt[index(fuel, null)] = Double.NaN;
+				ttw[index(fuel, null)] = Double.NaN;
+				for (ElectricityMix mix : ElectricityMix.values()) {
+					wtt[index(fuel, mix)] = factor(properties, "wtt.electricity." + mix.getName(), source);
+				}
+				keys += ElectricityMix.values().length;
+			} else {
+				double wttFactor = factor(properties, "wtt." + fuel.getName(), source);
+				double ttwFactor = factor(properties, "ttw." + fuel.getName(), source);
+				// the mix doesn't matter for fuels
+				for (int slot = 0; slot < MIX_SLOTS; slot++) {
+					wtt[fuel.ordinal() * MIX_SLOTS + slot] = wttFactor;
+					ttw[fuel.ordinal() * MIX_SLOTS + slot] = ttwFactor;
+				}
+				keys += 2;
+			}
+		}
+
+		if (properties.size() != keys) {
+			throw new InvalidPropertiesFormatException(source + ": unknown keys besides the " + keys + " expected ones");
+		}
+
+		return new EmissionFactorSet(version.trim(), wtt, ttw);
+	}
+
+	private static double factor(Properties properties, String key, String source) throws InvalidPropertiesFormatException {
+		String value = properties.getProperty(key);
+		if (value == null) throw new InvalidPropertiesFormatException(source + ": " + key + " is missing");
+
+		double factor;
+		try {
+			factor = Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			throw new InvalidPropertiesFormatException(source + ": " + key + " is not a number");
+		}
+		if (!(factor >= 0) || Double.isInfinite(factor)) {
+			throw new InvalidPropertiesFormatException(source + ": " + key + " must be a finite number >= 0");
+		}
+		return factor;
+	}
+
+	private static int index(FuelType fuel, ElectricityMix mix) {
+		return fuel.ordinal() * MIX_SLOTS + (mix == null ? 0 : mix.ordinal() + 1);
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * @param mix Only needed for {@link FuelType#ELECTRICITY}, otherwise ignored
+	 * @return Well-to-Tank plus Tank-to-Wheel factor in kg CO2/kg fuel or kg CO2/kWh
+	 * @throws IllegalArgumentException If the engine is electric, but no mix is given
+	 */
+	public double combined(FuelType engine, ElectricityMix mix) throws IllegalArgumentException {
+		return checkDefined(combined[index(engine, mix)]);
+	}
+
+	/**
+	 * @see #combined(FuelType, ElectricityMix)
+	 */
+	public double wtt(FuelType engine, ElectricityMix mix) throws IllegalArgumentException {
+		return checkDefined(wtt[index(engine, mix)]);
+	}
+
+	/**
+	 * @return Tank-to-Wheel factor in kg CO2/kg fuel, 0 for electricity
+	 */
+	public double ttw(FuelType engine) {
+		return engine == FuelType.ELECTRICITY ? 0.0 : ttw[index(engine, null)];
+	}
+
+	private static double checkDefined(double factor) {
+		if (Double.isNaN(factor)) throw new IllegalArgumentException("No argument 'mix' for electric engine");
+		return factor;
+	}
+
+	@Override
+	public String toString() {
+		return "EmissionFactorSet{version=" + version + '}';
+	}
+}
@@ -0,0 +1,211 @@
+package calculation;
+
+import car.FuelType;
+import car.database.CarCatalog;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The cars of the catalog with the lowest emissions on one route. The precomputed {@link EmissionCoefficients} are
+ * scanned in chunks with fork/join; every chunk keeps its best cars in a bounded heap and the heaps are merged.
+ * <p>
+ * Electric cars are only ranked if an electricity mix is given.
+ */
+public class EmissionRanking {
+
+	private static final int CHUNK_SIZE = 8192;
+
+	private final EmissionCoefficients coefficients;
+	private final ElectricityMix mix;
+	private final double urbanKM;
+	private final double nonUrbanKM;
+	private final double autobahnKM;
+	// brand number or fuel ordinal to filter by, -1 for all
+	private final int brand;
+	private final int fuel;
+	private final boolean unknownBrand;
+	private final int limit;
+
+	/**
+	 * @param brand only cars of this brand (case-insensitive) or {@code null} for all brands
+	 * @param fuel  only cars with this fuel or {@code null} for all fuel types
+	 * @param limit maximum number of ranked cars
+	 */
+	public EmissionRanking(EmissionCoefficients coefficients, ElectricityMix mix, double urbanKM, double nonUrbanKM,
+						   double autobahnKM, String brand, FuelType fuel, int limit) {
+		this.coefficients = coefficients;
+		this.mix = mix;
+		this.urbanKM = urbanKM;
+		this.nonUrbanKM = nonUrbanKM;
+		this.autobahnKM = autobahnKM;
+		this.brand = brand == null ? -1 : coefficients.brandNumber(brand);
+		this.unknownBrand = brand != null && this.brand < 0;
+		this.fuel = fuel == null ? -1 : fuel.ordinal();
+		this.limit = limit;
+	}
+
+	/**
+	 * @return the best cars, lowest emissions first
+	 */
+	public Result rank() {
+		if (unknownBrand || limit == 0) return new TopK(0).sorted(coefficients.getCatalog());
+
+		TopK best = ForkJoinPool.commonPool().invoke(new ScanTask(0, coefficients.catalogSize()));
+		return best.sorted(coefficients.getCatalog());
+	}
+
+	private TopK scan(int from, int to) {
+		TopK best = new TopK(limit);
+		int[] offsets = coefficients.offsets;
+		double[] values = coefficients.coefficients;
+		byte[] fuels = coefficients.fuels;
+		int[] brands = coefficients.brands;
+		int mixOffset = mix == null ? -1 : mix.ordinal() * 3;
+
+		for (int index = from; index < to; index++) {
+			if (fuel >= 0 && fuels[index] != fuel) continue;
+			if (brand >= 0 && brands[index] != brand) continue;
+
+			int offset = offsets[index];
+			if (offset < 0) {
+				if (mixOffset < 0) continue;
+				offset = ~offset + mixOffset;
+			}
+
+			best.offer(index, values[offset] * urbanKM + values[offset + 1] * nonUrbanKM + values[offset + 2] * autobahnKM);
+		}
+		return best;
+	}
+
+	private class ScanTask extends RecursiveTask<TopK> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+
+		private ScanTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected TopK compute() {
+			if (to - from <= CHUNK_SIZE) return scan(from, to);
+
+			int middle = (from + to) >>> 1;
+			ScanTask left = new ScanTask(from, middle);
+			left.fork();
+			TopK best = new ScanTask(middle, to).compute();
+			best.merge(left.join());
+			return best;
+		}
+	}
+
+	/**
+	 * Bounded max-heap of the cars with the lowest emissions, the worst of them at the root.
+	 */
+	private static class TopK {
+
+		private final int[] indexes;
+		private final double[] emissions;
+		private int size = 0;
+
+		private TopK(int limit) {
+			this.indexes = new int[limit];
+			this.emissions = new double[limit];
+		}
+
+		private void offer(int index, double value) {
+			if (size < indexes.length) {
+				int child = size++;
+				// sift up
+				while (child > 0) {
+					int parent = (child - 1) >>> 1;
+					if (emissions[parent] >= value) break;
+					indexes[child] = indexes[parent];
+					emissions[child] = emissions[parent];
+					child = parent;
+				}
+				indexes[child] = index;
+				emissions[child] = value;
+			} else if (size > 0 && value < emissions[0]) {
+				siftDown(index, value);
+			}
+		}
+
+		// puts the entry at the root and moves it down to its place
+		private void siftDown(int index, double value) {
+			int parent = 0;
+			while (true) {
+				int child = 2 * parent + 1;
+				if (child >= size) break;
+				if (child + 1 < size && emissions[child + 1] > emissions[child]) child++;
+				if (emissions[child] <= value) break;
+				indexes[parent] = indexes[child];
+				emissions[parent] = emissions[child];
+				parent = child;
+			}
+			indexes[parent] = index;
+			emissions[parent] = value;
+		}
+
+		private void merge(TopK other) {
+			for (int i = 0; i < other.size; i++) offer(other.indexes[i], other.emissions[i]);
+		}
+
+		private Result sorted(CarCatalog catalog) {
+			int[] sortedIndexes = new int[size];
+			double[] sortedEmissions = new double[size];
+			// taking the root repeatedly yields the cars from worst to best
+			for (int i = size - 1; i >= 0; i--) {
+				sortedIndexes[i] = indexes[0];
+				sortedEmissions[i] = emissions[0];
+				size--;
+				if (size > 0) siftDown(indexes[size], emissions[size]);
+			}
+			return new Result(catalog, sortedIndexes, sortedEmissions);
+		}
+	}
+
+	/**
+	 * Ranked cars, lowest emissions first. The details of a car are read from the catalog on access.
+	 */
+	public static class Result {
+
+		private final CarCatalog catalog;
+		private final int[] indexes;
+		private final double[] emissions;
+
+		private Result(CarCatalog catalog, int[] indexes, double[] emissions) {
+			this.catalog = catalog;
+			this.indexes = indexes;
+			this.emissions = emissions;
+		}
+
+		public int size() {
+			return indexes.length;
+		}
+
+		public String getId(int rank) {
+			return catalog.getId(indexes[rank]);
+		}
+
+		public String getBrand(int rank) {
+			return catalog.getBrand(indexes[rank]);
+		}
+
+		public String getModel(int rank) {
+			return catalog.getModel(indexes[rank]);
+		}
+
+		public FuelType getFuel(int rank) {
+			return catalog.getFuelType(indexes[rank]);
+		}
+
+		public double getEmissions(int rank) {
+			return emissions[rank];
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package calculation;
+
+import routing.PublicTransportRoute;
+
+import java.util.Arrays;
+import java.util.InvalidPropertiesFormatException;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Monte Carlo estimate of the uncertainty of emissions. The uncertain inputs are sampled from configured distributions:
+ * <ul>
+ *     <li>real-world consumption relative to the (NEDC) consumption of the car database, triangular</li>
+ *     <li>share of the kilometers that belongs to the neighbouring road class, because the speed-based road
+ *     classification of a route is approximate, uniform</li>
+ *     <li>market share of buses in short-distance public transport, triangular</li>
+ * </ul>
+ * The samples are drawn in parallel chunks with fork/join. Every chunk has its own {@link SplittableRandom} split off
+ * from one seed, so the same request always gets the same bands. No objects are created per sample.
+ */
+public class EmissionUncertainty {
+
+	private static final int CHUNK_SIZE = 1024;
+
+	private final Triangular consumptionFactor;
+	private final double roadClassShift;
+	private final Triangular localBusShare;
+	private final int samples;
+	private final long seed;
+
+	/**
+	 * @param roadClassShift maximum share of the kilometers of a road class that is moved to a neighbouring class
+	 * @param samples        number of samples per estimate
+	 * @param seed           seed of the random numbers
+	 */
+	public EmissionUncertainty(Triangular consumptionFactor, double roadClassShift, Triangular localBusShare, int samples, long seed) {
+		this.consumptionFactor = consumptionFactor;
+		this.roadClassShift = roadClassShift;
+		this.localBusShare = localBusShare;
+		this.samples = samples;
+		this.seed = seed;
+	}
+
+	/**
+	 * @param urbanCoefficient    emissions of the car per urban km
+	 * @param nonUrbanCoefficient emissions of the car per non-urban km
+	 * @param autobahnCoefficient emissions of the car per autobahn km
+	 */
+	public Bands carEmissions(double urbanCoefficient, double nonUrbanCoefficient, double autobahnCoefficient,
+							  double urbanKM, double nonUrbanKM, double autobahnKM) {
+		return estimate(random -> {
+			double urban = urbanKM;
+			double nonUrban = nonUrbanKM;
+			double autobahn = autobahnKM;
+
+			// move kilometers between urban and non-urban, then between non-urban and autobahn
+			double shift = (random.nextDouble() * 2 - 1) * roadClassShift;
+			double moved = shift > 0 ? shift * nonUrban : shift * urban;
+			urban += moved;
+			nonUrban -= moved;
+
+			shift = (random.nextDouble() * 2 - 1) * roadClassShift;
+			moved = shift > 0 ? shift * autobahn : shift * nonUrban;
+			nonUrban += moved;
+			autobahn -= moved;
+
+			return consumptionFactor.sample(random) * (urbanCoefficient * urban + nonUrbanCoefficient * nonUrban + autobahnCoefficient * autobahn);
+		});
+	}
+
+	public Bands publicTransportEmissions(PublicTransportRoute route, EmissionFactorSet factors) {
+		// the emissions are linear in the share of buses
+		double withoutBuses = CO2Calculator.calculatePublicTransportEmissions(route, factors, 0);
+		double onlyBuses = CO2Calculator.calculatePublicTransportEmissions(route, factors, 1);
+
+		return estimate(random -> withoutBuses + localBusShare.sample(random) * (onlyBuses - withoutBuses));
+	}
+
+	private Bands estimate(Sampler sampler) {
+		double[] values = new double[samples];
+		ForkJoinPool.commonPool().invoke(new SampleTask(sampler, values, 0, samples, new SplittableRandom(seed)));
+		Arrays.sort(values);
+		return new Bands(percentile(values, 0.05), percentile(values, 0.5), percentile(values, 0.95));
+	}
+
+	private static double percentile(double[] sorted, double p) {
+		return sorted[(int) Math.round(p * (sorted.length - 1))];
+	}
+
+	private interface Sampler {
+		double sample(SplittableRandom random);
+	}
+
+	private static class SampleTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Sampler sampler;
+		private final double[] values;
+		private final int from;
+		private final int to;
+		private final SplittableRandom random;
+
+		private SampleTask(Sampler sampler, double[] values, int from, int to, SplittableRandom random) {
+			this.sampler = sampler;
+			this.values = values;
+			this.from = from;
+			this.to = to;
+			this.random = random;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= CHUNK_SIZE) {
+				for (int i = from; i < to; i++) values[i] = sampler.sample(random);
+				return;
+			}
+
+			// split before forking, so every chunk gets the same random numbers in every run
+			int middle = (from + to) >>> 1;
+			SampleTask left = new SampleTask(sampler, values, from, middle, random.split());
+			SampleTask right = new SampleTask(sampler, values, middle, to, random);
+			invokeAll(left, right);
+		}
+	}
+
+	/**
+	 * Triangular distribution given by its minimum, most likely value and maximum.
+	 */
+	public static class Triangular {
+
+		private final double min;
+		private final double mode;
+		private final double max;
+
+		public Triangular(double min, double mode, double max) {
+			this.min = min;
+			this.mode = mode;
+			this.max = max;
+		}
+
+		/**
+		 * @param value {@code <min>;<mode>;<max>}
+		 * @throws InvalidPropertiesFormatException if the value is malformed or not {@code min <= mode <= max}
+		 */
+		public static Triangular parse(String name, String value) throws InvalidPropertiesFormatException {
+			String[] parts = value.split(";");
+			try {
+				if (parts.length == 3) {
+					double min = Double.parseDouble(parts[0].trim());
+					double mode = Double.parseDouble(parts[1].trim());
+					double max = Double.parseDouble(parts[2].trim());
+					if (min <= mode && mode <= max) return new Triangular(min, mode, max);
+				}
+			} catch (NumberFormatException ignored) {
+			}
+			throw new InvalidPropertiesFormatException(name + " must be '<min>;<mode>;<max>' with min <= mode <= max");
+		}
+
+		private double sample(SplittableRandom random) {
+			double u = random.nextDouble();
+			double range = max - min;
+			if (range == 0) return mode;
+
+			double modeShare = (mode - min) / range;
+			if (u < modeShare) return min + Math.sqrt(u * range * (mode - min));
+			return max - Math.sqrt((1 - u) * range * (max - mode));
+		}
+	}
+
+	/**
+	 * 5th percentile, median and 95th percentile of the sampled emissions.
+	 */
+	public static class Bands {
+
+		private final double p5;
+		private final double p50;
+		private final double p95;
+
+		private Bands(double p5, double p50, double p95) {
+			this.p5 = p5;
+			this.p50 = p50;
+			this.p95 = p95;
+		}
+
+		public double getP5() {
+			return p5;
+		}
+
+		public double getP50() {
+			return p50;
+		}
+
+		public double getP95() {
+			return p95;
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package calculation;
+
+import car.Car;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import routing.CarRoute;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rows of a batch calculation of car emissions. A row has the fields of
+ * {@code calculateCarEmissionsByRouteLength}: {@code carID}, {@code mix}, {@code urbanKM}, {@code nonUrbanKM},
+ * {@code autobahnKM} and the optional {@code departure}.
+ * <p>
+ * The rows are kept in parallel arrays, so the calculation runs in one loop over the precomputed
+ * {@link EmissionCoefficients} without creating objects per row. The
+ * results are written as {@code {"emissionFactorVersion": "...", "results": [...]}} with one result per row in the
+ * order of the rows, either {@code {"carEmissions": ...}} or {@code {"error": "..."}} if a single row can't be
+ * calculated.
+ */
+public class EmissionsBatch {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	// departure of rows without one
+	private static final long NO_DEPARTURE = Long.MIN_VALUE;
+
+	private int size = 0;
+	private String[] carIds = new String[64];
+	private String[] mixes = new String[64];
+	private double[] urbanKM = new double[64];
+	private double[] nonUrbanKM = new double[64];
+	private double[] autobahnKM = new double[64];
+	private long[] departures = new long[64];
+	private String[] errors = new String[64];
+
+	/**
+	 * @param body    JSON array of rows or one row per line (NDJSON)
+	 * @param maxRows maximum number of rows
+	 * @throws IOException              if the body is no valid JSON
+	 * @throws IllegalArgumentException if there are more than {@code maxRows} rows
+	 */
+	public static EmissionsBatch parse(String body, int maxRows) throws IOException, IllegalArgumentException {
+		EmissionsBatch batch = new EmissionsBatch();
+
+		try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+			JsonToken token = parser.nextToken();
+			boolean array = token == JsonToken.START_ARRAY;
+			if (array) token = parser.nextToken();
+
+			while (token != null && token != JsonToken.END_ARRAY) {
+				if (token != JsonToken.START_OBJECT) {
+					throw new IOException("Expected a JSON object for row " + batch.size + " but got " + token);
+				}
+				if (batch.size == maxRows) {
+					throw new IllegalArgumentException("A batch must not have more than " + maxRows + " rows");
+				}
+				batch.readRow(parser);
+				token = parser.nextToken();
+			}
+		}
+
+		return batch;
+	}
+
+	private void readRow(JsonParser parser) throws IOException {
+		if (size == carIds.length) grow();
+
+		int row = size++;
+		String mix = null;
+		String departure = null;
+
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+
+			switch (field) {
+				case "carID":
+					carIds[row] = readString(parser, field, row);
+					break;
+				case "mix":
+					mix = readString(parser, field, row);
+					break;
+				case "urbanKM":
+					urbanKM[row] = readNumber(parser, field, row);
+					break;
+				case "nonUrbanKM":
+					nonUrbanKM[row] = readNumber(parser, field, row);
+					break;
+				case "autobahnKM":
+					autobahnKM[row] = readNumber(parser, field, row);
+					break;
+				case "departure":
+					departure = readString(parser, field, row);
+					break;
+				default:
+					parser.skipChildren();
+			}
+		}
+
+		if (errors[row] != null) return;
+		// the mix is only read for electric cars, see calculate
+		mixes[row] = mix;
+		try {
+			departures[row] = departure == null ? NO_DEPARTURE : Instant.parse(departure).getEpochSecond();
+		} catch (IllegalArgumentException | DateTimeParseException e) {
+			errors[row] = e.getMessage();
+		}
+	}
+
+	// a value of the wrong type is an error of its row, an array or object is skipped so the next field can be read
+	private double readNumber(JsonParser parser, String field, int row) throws IOException {
+		JsonToken value = parser.currentToken();
+		if (value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT) return parser.getDoubleValue();
+		if (value != JsonToken.VALUE_NULL) {
+			parser.skipChildren();
+			if (errors[row] == null) errors[row] = field + " must be a number";
+		}
+		return 0;
+	}
+
+	private String readString(JsonParser parser, String field, int row) throws IOException {
+		JsonToken value = parser.currentToken();
+		if (value == JsonToken.VALUE_NULL) return null;
+		if (value.isScalarValue()) return parser.getValueAsString();
+		parser.skipChildren();
+		if (errors[row] == null) errors[row] = field + " must be a string";
+		return null;
+	}
+
+	private void grow() {
+		int capacity = carIds.length * 2;
+		carIds = Arrays.copyOf(carIds, capacity);
+		mixes = Arrays.copyOf(mixes, capacity);
+		urbanKM = Arrays.copyOf(urbanKM, capacity);
+		nonUrbanKM = Arrays.copyOf(nonUrbanKM, capacity);
+		autobahnKM = Arrays.copyOf(autobahnKM, capacity);
+		departures = Arrays.copyOf(departures, capacity);
+		errors = Arrays.copyOf(errors, capacity);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the distinct car ids of all rows that are not known by {@code coefficients}
+	 */
+	public Set<String> getCarIds(EmissionCoefficients coefficients) {
+		Set<String> ids = new LinkedHashSet<>();
+		for (int row = 0; row < size; row++) {
+			if (carIds[row] != null) ids.add(carIds[row]);
+		}
+		ids.removeIf(id -> coefficients.indexOf(id) >= 0);
+		return ids;
+	}
+
+	/**
+	 * Calculates all rows and writes the results as JSON.
+	 *
+	 * @param coefficients coefficients of the current catalog and emission factors, used for all rows
+	 * @param cars         the cars of {@link #getCarIds(EmissionCoefficients)} that exist, but are not known by {@code coefficients}
+	 */
+	public String calculate(EmissionCoefficients coefficients, Map<String, Car> cars) throws IOException {
+		Map<String, Integer> indexes = new HashMap<>();
+		StringWriter writer = new StringWriter(size * 32);
+
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+			generator.writeStartObject();
+			generator.writeStringField("emissionFactorVersion", coefficients.getFactors().getVersion());
+			generator.writeArrayFieldStart("results");
+
+			for (int row = 0; row < size; row++) {
+				generator.writeStartObject();
+
+				int index = carIds[row] == null ? -1 : indexes.computeIfAbsent(carIds[row], coefficients::indexOf);
+				Car car = index >= 0 || carIds[row] == null ? null : cars.get(carIds[row]);
+				if (errors[row] != null) {
+					generator.writeStringField("error", errors[row]);
+				} else if (index < 0 && car == null) {
+					generator.writeStringField("error", "Unknown carID " + carIds[row]);
+				} else {
+					try {
+						generator.writeNumberField("carEmissions", calculate(row, index, car, coefficients));
+					} catch (IllegalArgumentException e) {
+						generator.writeStringField("error", e.getMessage());
+					}
+				}
+
+				generator.writeEndObject();
+			}
+
+			generator.writeEndArray();
+			generator.writeEndObject();
+		}
+
+		return writer.toString();
+	}
+
+	// with the coefficients if the car is known by them (index >= 0), otherwise with the car
+	private double calculate(int row, int index, Car car, EmissionCoefficients coefficients) {
+		boolean electric = index >= 0 ? coefficients.isElectric(index) : car.isElectric();
+		ElectricityMix mix = electric ? ElectricityMix.fromName(mixes[row]) : null;
+		if (departures[row] == NO_DEPARTURE) {
+			if (index >= 0) return coefficients.calculate(index, mix, urbanKM[row], nonUrbanKM[row], autobahnKM[row]);
+			return CO2Calculator.calculateCarEmissions(car, urbanKM[row], nonUrbanKM[row], autobahnKM[row], mix, coefficients.getFactors());
+		}
+
+		double durationSeconds = CarRoute.estimateDurationSeconds(urbanKM[row], nonUrbanKM[row], autobahnKM[row]);
+		if (index >= 0) return coefficients.calculate(index, mix, urbanKM[row], nonUrbanKM[row], autobahnKM[row], departures[row], durationSeconds);
+		return CO2Calculator.calculateCarEmissions(car, urbanKM[row], nonUrbanKM[row], autobahnKM[row], mix, coefficients.getFactors(),
+				departures[row], durationSeconds);
+	}
+}
@@ -15,12 +15,12 @@ public class Car {
 
 	private final String brand;
 	private final String model;
-	private final String fuel;
+	private final FuelType fuel;
 
-	private final Double urbanConsumption;
-	private final Double nonUrbanConsumption;
-	private final Double autobahnConsumption;
-	private final Double co2Emissions;
+	private final double urbanConsumption;
+	private final double nonUrbanConsumption;
+	private final double autobahnConsumption;
+	private final double co2Emissions;
 
 	public Car(String id, CO2FootprintProperties properties) {
 		// get car data from data base by id
@@ -36,8 +36,8 @@ public class Car {
 		this.id = id;
 		this.brand = null;
 		this.model = null;
-		this.fuel = data.get("fuel");
-		if (this.fuel.equals("electricity") || this.fuel.equals("cng")) {
+		this.fuel = FuelType.fromName(data.get("fuel"));
+		if (this.fuel == FuelType.ELECTRICITY || this.fuel == FuelType.CNG) {
 			this.urbanConsumption = Double.parseDouble(data.get("urbanConsumption"));
 			this.nonUrbanConsumption = Double.parseDouble(data.get("nonUrbanConsumption"));
 			this.autobahnConsumption = Double.parseDouble(data.get("autobahnConsumption"));
@@ -55,8 +55,8 @@ public class Car {
 		this.id = id;
 		this.brand = brand;
 		this.model = model;
-		this.fuel = fuel;
-		if (this.fuel.equals("electricity") || this.fuel.equals("cng")) {
+		this.fuel = FuelType.fromName(fuel);
+		if (this.fuel == FuelType.ELECTRICITY || this.fuel == FuelType.CNG) {
 			this.urbanConsumption = Double.parseDouble(urbanConsumption);
 			this.nonUrbanConsumption = Double.parseDouble(nonUrbanConsumption);
 			this.autobahnConsumption = Double.parseDouble(autobahnConsumption);
@@ -69,6 +69,22 @@ public class Car {
 		this.co2Emissions = Double.parseDouble(co2);
 	}
 
+	/**
+	 * @param urbanConsumption consumption in the unit used by this class, i.e. already converted to kilograms for petrol
+	 *                         and diesel
+	 */
+	public Car(String id, String brand, String model, FuelType fuel, double urbanConsumption, double nonUrbanConsumption,
+			   double autobahnConsumption, double co2Emissions) {
+		this.id = id;
+		this.brand = brand;
+		this.model = model;
+		this.fuel = fuel;
+		this.urbanConsumption = urbanConsumption;
+		this.nonUrbanConsumption = nonUrbanConsumption;
+		this.autobahnConsumption = autobahnConsumption;
+		this.co2Emissions = co2Emissions;
+	}
+
 	public String getId() {
 		return id;
 	}
@@ -81,32 +97,32 @@ public class Car {
 		return model;
 	}
 
-	public String getFuel() {
+	public FuelType getFuel() {
 		return fuel;
 	}
 
-	public Double getUrbanConsumption() {
+	public double getUrbanConsumption() {
 		return urbanConsumption;
 	}
 
-	public Double getNonUrbanConsumption() {
+	public double getNonUrbanConsumption() {
 		return nonUrbanConsumption;
 	}
 
-	public Double getAutobahnConsumption() {
+	public double getAutobahnConsumption() {
 		return autobahnConsumption;
 	}
 
-	public Double getCo2Emissions() {
+	public double getCo2Emissions() {
 		return co2Emissions;
 	}
 
-	public Boolean isElectric() {
-		return this.fuel.equals("electricity");
+	public boolean isElectric() {
+		return fuel == FuelType.ELECTRICITY;
 	}
 
-	public Boolean isCng() {
-		return this.fuel.equals("cng");
+	public boolean isCng() {
+		return fuel == FuelType.CNG;
 	}
 
 	@Override
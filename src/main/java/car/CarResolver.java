@@ -0,0 +1,120 @@
+package car;
+
+import car.database.CarCatalog;
+import car.database.CarRepository;
+import util.LruCache;
+import util.SingleFlight;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the car for a calculation. The generic cars are looked up in a static map, cars of the repository are cached
+ * with their id, and so are ids that don't belong to any car.
+ * <p>
+ * Both caches are cleared as soon as the repository serves a new {@link CarCatalog}, so a refresh of the car database
+ * is visible right away. Concurrent lookups of the same uncached id share one repository lookup.
+ */
+public class CarResolver {
+
+	private static final Map<String, Car> GENERIC_CARS;
+
+	static {
+		Map<String, Car> genericCars = new HashMap<>();
+		for (Car car : Car.getGenericCars()) genericCars.put(car.getId(), car);
+		GENERIC_CARS = Collections.unmodifiableMap(genericCars);
+	}
+
+	private final CarRepository repository;
+
+	private final LruCache<String, Car> cars;
+	private final LruCache<String, Boolean> unknownIds;
+	private final SingleFlight<String, Car> lookups = new SingleFlight<>();
+
+	// catalog the cached cars were read from
+	private CarCatalog cachedCatalog;
+
+	public CarResolver(CarRepository repository, int cacheSize) {
+		this.repository = repository;
+		this.cars = new LruCache<>(cacheSize);
+		this.unknownIds = new LruCache<>(cacheSize);
+	}
+
+	/**
+	 * @param id id of a generic car or a car of the repository
+	 * @return the car or {@code null} if there is no car with this id
+	 */
+	public Car resolve(String id) throws SQLException {
+		if (id == null) return null;
+
+		Car car = GENERIC_CARS.get(id);
+		if (car != null) return car;
+
+		invalidateOnRefresh();
+
+		car = cars.get(id);
+		if (car != null) return car;
+		if (unknownIds.get(id) != null) return null;
+
+		car = lookups.call(id, () -> repository.getCar(id));
+		if (car == null) unknownIds.put(id, Boolean.TRUE);
+		else cars.put(id, car);
+		return car;
+	}
+
+	/**
+	 * Resolves many ids with a single repository lookup for all ids that are neither generic nor cached.
+	 *
+	 * @return the cars that exist, by id
+	 */
+	public Map<String, Car> resolveAll(Collection<String> ids) throws SQLException {
+		Map<String, Car> resolved = new HashMap<>();
+		List<String> missing = new ArrayList<>();
+
+		invalidateOnRefresh();
+
+		for (String id : ids) {
+			if (id == null || resolved.containsKey(id)) continue;
+
+			Car car = GENERIC_CARS.get(id);
+			if (car == null) car = cars.get(id);
+			if (car != null) resolved.put(id, car);
+			else if (unknownIds.get(id) == null) missing.add(id);
+		}
+		if (missing.isEmpty()) return resolved;
+
+		Map<String, Car> found = repository.getCars(missing);
+		for (String id : missing) {
+			Car car = found.get(id);
+			if (car == null) {
+				unknownIds.put(id, Boolean.TRUE);
+			} else {
+				cars.put(id, car);
+				resolved.put(id, car);
+			}
+		}
+		return resolved;
+	}
+
+	public LruCache<String, Car> getCarCache() {
+		return cars;
+	}
+
+	public LruCache<String, Boolean> getUnknownIdCache() {
+		return unknownIds;
+	}
+
+	private synchronized void invalidateOnRefresh() {
+		CarCatalog catalog = repository.getCatalog();
+		if (catalog == cachedCatalog) return;
+
+		cars.clear();
+		unknownIds.clear();
+		cachedCatalog = catalog;
+	}
+}
@@ -0,0 +1,51 @@
+package car;
+
+/**
+ * What powers the engine of a car. The name is the representation used by the REST API and the agent.
+ */
+public enum FuelType {
+
+	PETROL("petrol"),
+	DIESEL("diesel"),
+	LPG("lpg"),
+	CNG("cng"),
+	ELECTRICITY("electricity");
+
+	private final String name;
+
+	FuelType(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @param name 'petrol', 'diesel', 'lpg', 'cng' or 'electricity'
+	 * @throws IllegalArgumentException if the name doesn't match any fuel type
+	 */
+	public static FuelType fromName(String name) throws IllegalArgumentException {
+		if (name != null) {
+			switch (name) {
+				case "petrol":
+					return PETROL;
+				case "diesel":
+					return DIESEL;
+				case "lpg":
+					return LPG;
+				case "cng":
+					return CNG;
+				case "electricity":
+					return ELECTRICITY;
+			}
+		}
+
+		throw new IllegalArgumentException("Fuel must be 'petrol', 'diesel', 'lpg', 'cng' or 'electricity'");
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
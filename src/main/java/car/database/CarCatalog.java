@@ -0,0 +1,489 @@
+package car.database;
+
+import car.Car;
+import car.FuelType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable, read-optimized index of the car database.
+ * <p>
+ * The catalog is built once after every database refresh and answers all brand/model/fuel/id lookups with binary
+ * searches. Keys are compared case-insensitively like the default MySQL collation; a lookup that is not found here
+ * returns {@code null} so the caller can fall back to the database.
+ * <p>
+ * The data lives off-heap in a compact binary format that is also the format of the snapshot file, so a snapshot written
+ * with {@link #writeSnapshot(Path)} can be served right after startup via {@link #mapSnapshot(Path)}:
+ * <pre>
+ * header       magic, version, build time, number of entries per section
+ * cars         id, brand, model (string indexes), fuel type and the consumption and CO2 columns, sorted by id
+ * brands       key, name, model names, fuel names, models and fuel groups, sorted by key
+ * models       key, name, fuel names and fuel groups, sorted by key within their brand
+ * fuel groups  fuel key and the model names (of a brand) or car ids (of a model) with that fuel
+ * lists        string indexes referenced by the sections above
+ * strings      offsets and UTF-8 bytes of the deduplicated strings
+ * </pre>
+ * Fuel types are stored in the agent representation ('petrol', 'diesel', 'cng', 'electricity').
+ */
+public class CarCatalog {
+
+	private static final int MAGIC = 0x43324343; // "C2CC"
+	private static final int VERSION = 2;
+
+	private static final FuelType[] FUEL_TYPES = FuelType.values();
+
+	private static final int HEADER_SIZE = 48;
+	private static final int CAR_SIZE = 4 * 4 + 4 * 8;
+	private static final int BRAND_SIZE = 10 * 4;
+	private static final int MODEL_SIZE = 6 * 4;
+	private static final int FUEL_GROUP_SIZE = 3 * 4;
+
+	private final ByteBuffer buffer;
+	private final long buildTimeMillis;
+	private final int carCount;
+	private final int brandCount;
+	private final int brandListStart;
+
+	private final int carsPosition;
+	private final int brandsPosition;
+	private final int modelsPosition;
+	private final int fuelGroupsPosition;
+	private final int listsPosition;
+	private final int stringOffsetsPosition;
+	private final int stringDataPosition;
+
+	private CarCatalog(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException("Not a car catalog snapshot of version " + VERSION);
+		}
+
+		this.buildTimeMillis = buffer.getLong(8);
+		this.carCount = buffer.getInt(16);
+		this.brandCount = buffer.getInt(20);
+		int modelCount = buffer.getInt(24);
+		int fuelGroupCount = buffer.getInt(28);
+		int listSize = buffer.getInt(32);
+		int stringCount = buffer.getInt(36);
+		this.brandListStart = buffer.getInt(40);
+
+		this.carsPosition = HEADER_SIZE;
+		this.brandsPosition = carsPosition + carCount * CAR_SIZE;
+		this.modelsPosition = brandsPosition + brandCount * BRAND_SIZE;
+		this.fuelGroupsPosition = modelsPosition + modelCount * MODEL_SIZE;
+		this.listsPosition = fuelGroupsPosition + fuelGroupCount * FUEL_GROUP_SIZE;
+		this.stringOffsetsPosition = listsPosition + listSize * 4;
+		this.stringDataPosition = stringOffsetsPosition + (stringCount + 1) * 4;
+
+		if (stringDataPosition < HEADER_SIZE || stringDataPosition > buffer.capacity()
+				|| stringDataPosition + buffer.getInt(stringDataPosition - 4) != buffer.capacity()) {
+			throw new IOException("Truncated car catalog snapshot");
+		}
+	}
+
+	/**
+	 * Maps a snapshot written by {@link #writeSnapshot(Path)} read-only into memory. The data is paged in on demand.
+	 */
+	public static CarCatalog mapSnapshot(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new CarCatalog(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Writes this catalog to a temporary file first and moves it over {@code file} afterwards, so a crash never leaves
+	 * a half written snapshot behind.
+	 */
+	public void writeSnapshot(Path file) throws IOException {
+		Path absolute = file.toAbsolutePath();
+		Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer data = buffer.duplicate();
+			data.clear();
+			while (data.hasRemaining()) channel.write(data);
+			channel.force(true);
+		}
+
+		Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public List<String> getBrands() {
+		return strings(brandListStart, brandCount);
+	}
+
+	public List<String> getModels(String brand) {
+		int brandPosition = findBrand(brand);
+		return brandPosition < 0 ? null : strings(buffer.getInt(brandPosition + 8), buffer.getInt(brandPosition + 12));
+	}
+
+	public List<String> getModelsByFuel(String brand, String fuel) {
+		int brandPosition = findBrand(brand);
+		if (brandPosition < 0) return null;
+
+		int fuelGroupPosition = findFuelGroup(buffer.getInt(brandPosition + 32), buffer.getInt(brandPosition + 36), fuel);
+		return fuelGroupPosition < 0 ? null : strings(buffer.getInt(fuelGroupPosition + 4), buffer.getInt(fuelGroupPosition + 8));
+	}
+
+	public List<String> getFuel(String brand, String model) {
+		int modelPosition = findModel(brand, model);
+		return modelPosition < 0 ? null : strings(buffer.getInt(modelPosition + 8), buffer.getInt(modelPosition + 12));
+	}
+
+	public List<String> getFuelByBrand(String brand) {
+		int brandPosition = findBrand(brand);
+		return brandPosition < 0 ? null : strings(buffer.getInt(brandPosition + 16), buffer.getInt(brandPosition + 20));
+	}
+
+	public List<String> getCarIds(String brand, String model, String fuel) {
+		int modelPosition = findModel(brand, model);
+		if (modelPosition < 0) return null;
+
+		int fuelGroupPosition = findFuelGroup(buffer.getInt(modelPosition + 16), buffer.getInt(modelPosition + 20), fuel);
+		return fuelGroupPosition < 0 ? null : strings(buffer.getInt(fuelGroupPosition + 4), buffer.getInt(fuelGroupPosition + 8));
+	}
+
+	public Car getCar(String id) {
+		int index = indexOf(id);
+		if (index < 0) return null;
+
+		int position = carsPosition + index * CAR_SIZE;
+		return new Car(id, string(buffer.getInt(position + 4)), string(buffer.getInt(position + 8)), FUEL_TYPES[buffer.getInt(position + 12)],
+				buffer.getDouble(position + 16), buffer.getDouble(position + 24), buffer.getDouble(position + 32), buffer.getDouble(position + 40));
+	}
+
+	/**
+	 * @return position of the car in this catalog (between 0 and {@link #size()}) or -1 if there is no car with this id
+	 */
+	public int indexOf(String id) {
+		if (id == null) return -1;
+		return search(carsPosition, CAR_SIZE, 0, carCount, id.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public String getId(int index) {
+		return string(buffer.getInt(carsPosition + index * CAR_SIZE));
+	}
+
+	public String getBrand(int index) {
+		return string(buffer.getInt(carsPosition + index * CAR_SIZE + 4));
+	}
+
+	public String getModel(int index) {
+		return string(buffer.getInt(carsPosition + index * CAR_SIZE + 8));
+	}
+
+	public FuelType getFuelType(int index) {
+		return FUEL_TYPES[buffer.getInt(carsPosition + index * CAR_SIZE + 12)];
+	}
+
+	public double getUrbanConsumption(int index) {
+		return buffer.getDouble(carsPosition + index * CAR_SIZE + 16);
+	}
+
+	public double getNonUrbanConsumption(int index) {
+		return buffer.getDouble(carsPosition + index * CAR_SIZE + 24);
+	}
+
+	public double getAutobahnConsumption(int index) {
+		return buffer.getDouble(carsPosition + index * CAR_SIZE + 32);
+	}
+
+	public int size() {
+		return carCount;
+	}
+
+	public long getBuildTimeMillis() {
+		return buildTimeMillis;
+	}
+
+	/**
+	 * @return size in bytes of the off-heap data of this catalog
+	 */
+	public long getMemoryFootprint() {
+		return buffer.capacity();
+	}
+
+	@Override
+	public String toString() {
+		return "CarCatalog{" +
+				"cars=" + carCount +
+				", brands=" + brandCount +
+				", buildTimeMillis=" + buildTimeMillis +
+				", memoryFootprint=" + getMemoryFootprint() +
+				'}';
+	}
+
+	// position of the brand entry or -1
+	private int findBrand(String brand) {
+		if (brand == null) return -1;
+
+		int index = search(brandsPosition, BRAND_SIZE, 0, brandCount, keyBytes(brand));
+		return index < 0 ? -1 : brandsPosition + index * BRAND_SIZE;
+	}
+
+	// position of the model entry or -1
+	private int findModel(String brand, String model) {
+		int brandPosition = findBrand(brand);
+		if (brandPosition < 0 || model == null) return -1;
+
+		int start = buffer.getInt(brandPosition + 24);
+		int index = search(modelsPosition, MODEL_SIZE, start, start + buffer.getInt(brandPosition + 28), keyBytes(model));
+		return index < 0 ? -1 : modelsPosition + index * MODEL_SIZE;
+	}
+
+	// position of the fuel group entry or -1, a brand or model has at most a handful of fuel groups
+	private int findFuelGroup(int start, int count, String fuel) {
+		if (fuel == null) return -1;
+
+		byte[] key = keyBytes(fuel);
+		for (int i = start; i < start + count; i++) {
+			int position = fuelGroupsPosition + i * FUEL_GROUP_SIZE;
+			if (compare(buffer.getInt(position), key) == 0) return position;
+		}
+		return -1;
+	}
+
+	/**
+	 * Binary search over the entries between {@code from} (inclusive) and {@code to} (exclusive) of a section, whose
+	 * first field is the index of the string they are sorted by.
+	 *
+	 * @return index of the entry or -1
+	 */
+	private int search(int sectionPosition, int entrySize, int from, int to, byte[] key) {
+		int low = from;
+		int high = to - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = compare(buffer.getInt(sectionPosition + middle * entrySize), key);
+			if (comparison < 0) low = middle + 1;
+			else if (comparison > 0) high = middle - 1;
+			else return middle;
+		}
+		return -1;
+	}
+
+	// compares the UTF-8 bytes of a string of the catalog with the key without decoding it
+	private int compare(int stringIndex, byte[] key) {
+		int start = stringDataPosition + buffer.getInt(stringOffsetsPosition + stringIndex * 4);
+		int length = stringDataPosition + buffer.getInt(stringOffsetsPosition + stringIndex * 4 + 4) - start;
+
+		for (int i = 0; i < Math.min(length, key.length); i++) {
+			int comparison = Integer.compare(buffer.get(start + i) & 0xff, key[i] & 0xff);
+			if (comparison != 0) return comparison;
+		}
+		return Integer.compare(length, key.length);
+	}
+
+	private String string(int stringIndex) {
+		int start = stringDataPosition + buffer.getInt(stringOffsetsPosition + stringIndex * 4);
+		byte[] bytes = new byte[stringDataPosition + buffer.getInt(stringOffsetsPosition + stringIndex * 4 + 4) - start];
+		for (int i = 0; i < bytes.length; i++) bytes[i] = buffer.get(start + i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private List<String> strings(int listStart, int count) {
+		List<String> values = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) values.add(string(buffer.getInt(listsPosition + (listStart + i) * 4)));
+		return Collections.unmodifiableList(values);
+	}
+
+	private static String key(String value) {
+		return value == null ? null : value.trim().toLowerCase(Locale.ROOT);
+	}
+
+	private static byte[] keyBytes(String value) {
+		return key(value).getBytes(StandardCharsets.UTF_8);
+	}
+
+	// unsigned lexicographic order of the UTF-8 bytes, the order the catalog is searched in
+	private static final Comparator<byte[]> BYTE_ORDER = (a, b) -> {
+		for (int i = 0; i < Math.min(a.length, b.length); i++) {
+			int comparison = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+			if (comparison != 0) return comparison;
+		}
+		return Integer.compare(a.length, b.length);
+	};
+
+	private static class BrandBuilder {
+		private final String name;
+		private final Map<String, ModelBuilder> models = new LinkedHashMap<>();
+		private final Map<String, String> fuels = new LinkedHashMap<>();
+		private final Map<String, LinkedHashMap<String, String>> modelsByFuel = new LinkedHashMap<>();
+
+		private BrandBuilder(String name) {
+			this.name = name;
+		}
+	}
+
+	private static class ModelBuilder {
+		private final String name;
+		private final Map<String, String> fuels = new LinkedHashMap<>();
+		private final Map<String, List<String>> idsByFuel = new LinkedHashMap<>();
+
+		private ModelBuilder(String name) {
+			this.name = name;
+		}
+	}
+
+	/**
+	 * Collects the rows of the car database and encodes the immutable {@link CarCatalog}. Not thread-safe.
+	 */
+	public static class Builder {
+
+		private final long startTime = System.currentTimeMillis();
+
+		private final Map<String, BrandBuilder> brandEntries = new LinkedHashMap<>();
+		private final Map<String, Car> carsById = new HashMap<>();
+
+		// string dictionary of the encoded catalog
+		private final Map<String, Integer> stringIndexes = new HashMap<>();
+		private final List<byte[]> strings = new ArrayList<>();
+		private final List<Integer> lists = new ArrayList<>();
+
+		/**
+		 * Adds one row of the car database. Rows without id, brand or model and rows with an id that was already added
+		 * are ignored.
+		 *
+		 * @param fuel fuel type in agent representation
+		 */
+		public Builder add(String id, String brand, String model, String fuel, String urbanConsumption,
+						   String nonUrbanConsumption, String autobahnConsumption, String co2) {
+			if (id == null || brand == null || model == null || carsById.containsKey(id)) return this;
+
+			// parse first, so rows without usable consumption data don't end up in the indexes
+			Car car = new Car(id, brand, model, fuel, urbanConsumption, nonUrbanConsumption, autobahnConsumption, co2);
+
+			BrandBuilder brandEntry = brandEntries.computeIfAbsent(key(brand), k -> new BrandBuilder(brand));
+			ModelBuilder modelEntry = brandEntry.models.computeIfAbsent(key(model), k -> new ModelBuilder(model));
+
+			brandEntry.fuels.putIfAbsent(key(fuel), fuel);
+			brandEntry.modelsByFuel.computeIfAbsent(key(fuel), k -> new LinkedHashMap<>()).putIfAbsent(key(model), modelEntry.name);
+			modelEntry.fuels.putIfAbsent(key(fuel), fuel);
+			modelEntry.idsByFuel.computeIfAbsent(key(fuel), k -> new ArrayList<>()).add(id);
+
+			carsById.put(id, car);
+			return this;
+		}
+
+		public CarCatalog build() {
+			List<Car> cars = new ArrayList<>(carsById.values());
+			cars.sort((a, b) -> BYTE_ORDER.compare(a.getId().getBytes(StandardCharsets.UTF_8), b.getId().getBytes(StandardCharsets.UTF_8)));
+
+			List<BrandBuilder> brands = new ArrayList<>(brandEntries.values());
+			brands.sort((a, b) -> BYTE_ORDER.compare(keyBytes(a.name), keyBytes(b.name)));
+
+			List<int[]> brandRows = new ArrayList<>();
+			List<int[]> modelRows = new ArrayList<>();
+			List<int[]> fuelGroupRows = new ArrayList<>();
+
+			int brandListStart = list(brandNames());
+			for (BrandBuilder brand : brands) {
+				List<ModelBuilder> models = new ArrayList<>(brand.models.values());
+				models.sort((a, b) -> BYTE_ORDER.compare(keyBytes(a.name), keyBytes(b.name)));
+
+				int modelStart = modelRows.size();
+				for (ModelBuilder model : models) {
+					int fuelGroupStart = fuelGroupRows.size();
+					for (Map.Entry<String, List<String>> ids : model.idsByFuel.entrySet()) {
+						fuelGroupRows.add(new int[]{string(ids.getKey()), list(ids.getValue()), ids.getValue().size()});
+					}
+					modelRows.add(new int[]{string(key(model.name)), string(model.name), list(new ArrayList<>(model.fuels.values())), model.fuels.size(),
+							fuelGroupStart, model.idsByFuel.size()});
+				}
+
+				int fuelGroupStart = fuelGroupRows.size();
+				for (Map.Entry<String, LinkedHashMap<String, String>> modelNames : brand.modelsByFuel.entrySet()) {
+					fuelGroupRows.add(new int[]{string(modelNames.getKey()), list(new ArrayList<>(modelNames.getValue().values())), modelNames.getValue().size()});
+				}
+
+				List<String> modelNames = new ArrayList<>();
+				for (ModelBuilder model : brand.models.values()) modelNames.add(model.name);
+
+				brandRows.add(new int[]{string(key(brand.name)), string(brand.name), list(modelNames), modelNames.size(),
+						list(new ArrayList<>(brand.fuels.values())), brand.fuels.size(), modelStart, models.size(),
+						fuelGroupStart, brand.modelsByFuel.size()});
+			}
+
+			int[] carColumns = new int[cars.size() * 4];
+			for (int i = 0; i < cars.size(); i++) {
+				Car car = cars.get(i);
+				carColumns[i * 4] = string(car.getId());
+				carColumns[i * 4 + 1] = string(car.getBrand());
+				carColumns[i * 4 + 2] = string(car.getModel());
+				carColumns[i * 4 + 3] = car.getFuel().ordinal();
+			}
+
+			int stringBytes = 0;
+			for (byte[] string : strings) stringBytes += string.length;
+
+			int size = HEADER_SIZE + cars.size() * CAR_SIZE + brandRows.size() * BRAND_SIZE + modelRows.size() * MODEL_SIZE
+					+ fuelGroupRows.size() * FUEL_GROUP_SIZE + lists.size() * 4 + (strings.size() + 1) * 4 + stringBytes;
+			ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+
+			buffer.putInt(MAGIC).putInt(VERSION).putLong(0).putInt(cars.size()).putInt(brandRows.size()).putInt(modelRows.size())
+					.putInt(fuelGroupRows.size()).putInt(lists.size()).putInt(strings.size()).putInt(brandListStart).putInt(0);
+
+			for (int i = 0; i < cars.size(); i++) {
+				Car car = cars.get(i);
+				for (int j = 0; j < 4; j++) buffer.putInt(carColumns[i * 4 + j]);
+				buffer.putDouble(car.getUrbanConsumption()).putDouble(car.getNonUrbanConsumption())
+						.putDouble(car.getAutobahnConsumption()).putDouble(car.getCo2Emissions());
+			}
+			for (int[] row : brandRows) for (int value : row) buffer.putInt(value);
+			for (int[] row : modelRows) for (int value : row) buffer.putInt(value);
+			for (int[] row : fuelGroupRows) for (int value : row) buffer.putInt(value);
+			for (int value : lists) buffer.putInt(value);
+
+			int offset = 0;
+			for (byte[] string : strings) {
+				buffer.putInt(offset);
+				offset += string.length;
+			}
+			buffer.putInt(offset);
+			for (byte[] string : strings) buffer.put(string);
+
+			buffer.putLong(8, System.currentTimeMillis() - startTime);
+			try {
+				return new CarCatalog(buffer);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private List<String> brandNames() {
+			List<String> names = new ArrayList<>();
+			for (BrandBuilder brand : brandEntries.values()) names.add(brand.name);
+			return names;
+		}
+
+		// index of the string in the dictionary, equal strings are stored once
+		private int string(String value) {
+			return stringIndexes.computeIfAbsent(value, v -> {
+				strings.add(v.getBytes(StandardCharsets.UTF_8));
+				return strings.size() - 1;
+			});
+		}
+
+		// start of the list of string indexes
+		private int list(List<String> values) {
+			int start = lists.size();
+			for (String value : values) lists.add(string(value));
+			return start;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package car.database;
+
+import com.opencsv.CSVParser;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reading of the .csv export of the car database, shared by all {@link CarRepository} backends.
+ */
+final class CarDatabaseExport {
+
+	// number of columns of the export that are imported
+	static final int COLUMN_COUNT = 26;
+
+	private static final Set<String> VALID_FUEL_TYPES = new HashSet<>(Arrays.asList(
+			RestConsumer.translateFuelToDatabaseRepresentation("petrol"),
+			RestConsumer.translateFuelToDatabaseRepresentation("diesel"),
+			RestConsumer.translateFuelToDatabaseRepresentation("cng"),
+			RestConsumer.translateFuelToDatabaseRepresentation("electricity")));
+
+	private CarDatabaseExport() {
+	}
+
+	/**
+	 * @return reader for the .csv export of the car database that skips the header line
+	 */
+	static CSVReader openCsvReader(InputStream dataInputStream) {
+		Reader reader = new InputStreamReader(dataInputStream);
+
+		CSVParser csvParser = new CSVParserBuilder()
+				.withSeparator(';')
+				.build();
+
+		return new CSVReaderBuilder(reader)
+				.withSkipLines(1)
+				.withCSVParser(csvParser)
+				.build();
+	}
+
+	/**
+	 * Only records with the necessary information like consumption and a supported fuel type are imported.
+	 */
+	static boolean isRecordValid(String[] record) {
+		if (record.length < COLUMN_COUNT) return false;
+
+		if (record[0].equals("") || record[3].equals("") || record[6].equals("") || record[11].equals("")
+				|| record[12].equals("") || record[14].equals("")) {
+			return false;
+		}
+
+		return VALID_FUEL_TYPES.contains(record[6]);
+	}
+}
@@ -0,0 +1,114 @@
+package car.database;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import util.CO2FootprintProperties;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+
+/**
+ * Brings the cache database up to date with the remote car database, doing as little work as possible.
+ * <p>
+ * The export is requested conditionally with the validators of the last import. If it was downloaded anyway but its
+ * fingerprint equals the last import, nothing is changed. Otherwise only the inserted, modified and removed rows are
+ * applied, unless more than {@code CarDatabaseMaxIncrementalRatio} of the rows changed or there is no previous import;
+ * then the whole database is imported via {@link CarRepository#refreshDatabase(InputStream, ImportState)}.
+ */
+public class CarDatabaseUpdater {
+
+	public enum Outcome {NOT_MODIFIED, UNCHANGED, INCREMENTAL, FULL}
+
+	private static final Log log = LogFactory.getLog(CarDatabaseUpdater.class);
+
+	private final CarRepository repository;
+	private final RestConsumer restConsumer;
+	private final CO2FootprintProperties properties;
+	private final Path stateFile;
+
+	public CarDatabaseUpdater(CarRepository repository, RestConsumer restConsumer, CO2FootprintProperties properties) {
+		this.repository = repository;
+		this.restConsumer = restConsumer;
+		this.properties = properties;
+		this.stateFile = Paths.get(properties.getCarDatabaseStateFile());
+	}
+
+	public Outcome update() throws IOException, CsvValidationException, SQLException {
+		ImportState previous = ImportState.load(stateFile);
+
+		Path exportFile = Files.createTempFile("car-database", ".csv");
+		try {
+			DatabaseDownload download = restConsumer.downloadDatabase(previous.getEtag(), previous.getLastModified(), exportFile);
+			if (!download.isModified()) {
+				log.info("Car database not modified since " + previous.getLastModified());
+				return Outcome.NOT_MODIFIED;
+			}
+
+			if (download.getFingerprint().equals(previous.getFingerprint())) {
+				log.info("Car database content unchanged (" + download.getFingerprint() + ")");
+				previous.setValidators(download.getEtag(), download.getLastModified());
+				previous.save(stateFile);
+				return Outcome.UNCHANGED;
+			}
+
+			if (!previous.isEmpty()) {
+				ImportState next = previous.next(download.getEtag(), download.getLastModified(), download.getFingerprint());
+				CatalogDiff diff = computeDiff(exportFile, previous, next);
+				if (diff != null) {
+					repository.applyChanges(diff);
+					next.save(stateFile);
+					log.info("Car database updated incrementally: " + diff);
+					return Outcome.INCREMENTAL;
+				}
+			}
+
+			ImportState next = previous.next(download.getEtag(), download.getLastModified(), download.getFingerprint());
+			ImportStatistics statistics;
+			try (InputStream inputStream = Files.newInputStream(exportFile)) {
+				statistics = repository.refreshDatabase(inputStream, next);
+			}
+			next.save(stateFile);
+			log.info("Car database imported completely: " + statistics);
+			return Outcome.FULL;
+		} finally {
+			Files.deleteIfExists(exportFile);
+		}
+	}
+
+	/**
+	 * Forgets the last import, e.g. after a rollback, so the next update imports the whole database.
+	 */
+	public void resetState() throws IOException {
+		Files.deleteIfExists(stateFile);
+	}
+
+	/**
+	 * @return the changes or {@code null} if too many rows changed to apply them one by one
+	 */
+	private CatalogDiff computeDiff(Path exportFile, ImportState previous, ImportState next) throws IOException, CsvValidationException {
+		long maxChanges = Math.round(previous.size() * properties.getCarDatabaseMaxIncrementalRatio());
+		CatalogDiff diff = new CatalogDiff();
+
+		try (CSVReader csvReader = CarDatabaseExport.openCsvReader(Files.newInputStream(exportFile))) {
+			String[] record;
+			while ((record = csvReader.readNext()) != null) {
+				if (!CarDatabaseExport.isRecordValid(record)) continue;
+
+				ImportState.Row row = next.assign(record);
+				if (row.getChange() == ImportState.Change.NEW) diff.insert(row.getId(), record);
+				else if (row.getChange() == ImportState.Change.MODIFIED) diff.update(row.getId(), record);
+
+				if (diff.size() > maxChanges) return null;
+			}
+		}
+
+		diff.delete(next.getRemovedIds());
+		return diff.size() > maxChanges ? null : diff;
+	}
+}
@@ -0,0 +1,139 @@
+package car.database;
+
+import car.Car;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.opencsv.exceptions.CsvValidationException;
+import util.CO2FootprintProperties;
+import util.SharedResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage of the cached car database. The backend is chosen with {@code CarRepositoryBackend}:
+ * <ul>
+ *     <li>{@code mysql} - {@link Driver}, the MySQL cache database</li>
+ *     <li>{@code embedded} - {@link EmbeddedCarRepository}, a local file that is served from memory</li>
+ * </ul>
+ * Fuel types are passed and returned in the agent representation ('petrol', 'diesel', 'cng', 'electricity').
+ */
+public interface CarRepository extends AutoCloseable {
+
+	SharedResource<CarRepository> SHARED = new SharedResource<>(CarRepository::create);
+
+	static CarRepository create(CO2FootprintProperties properties) throws ClassNotFoundException, IOException {
+		switch (properties.getCarRepositoryBackend()) {
+			case "embedded":
+				return new EmbeddedCarRepository(properties);
+			case "mysql":
+				return new Driver(properties);
+		}
+		throw new IllegalArgumentException("Unknown CarRepositoryBackend " + properties.getCarRepositoryBackend());
+	}
+
+	@Override
+	void close();
+
+	/**
+	 * @return the catalog built by the last {@link #reloadCatalog()} or {@code null} if none was built yet
+	 */
+	CarCatalog getCatalog();
+
+	/**
+	 * Reads all cars, builds a new {@link CarCatalog} and replaces the current one atomically. Readers keep using the
+	 * previous catalog until the new one is complete.
+	 */
+	CarCatalog reloadCatalog() throws IOException, SQLException;
+
+	/**
+	 * Replaces the imported cars (id > 9999) with the given .csv export without interrupting readers. The replaced
+	 * generation is kept, so {@link #rollbackDatabase()} can restore it.
+	 *
+	 * @param dataInputStream .csv export of the car database
+	 * @param importState     state of this import, assigns the ids of the imported cars
+	 * @return statistics of the import
+	 */
+	ImportStatistics refreshDatabase(InputStream dataInputStream, ImportState importState) throws IOException, CsvValidationException, SQLException;
+
+	/**
+	 * Switches back to the generation that was replaced by the last {@link #refreshDatabase(InputStream, ImportState)}.
+	 *
+	 * @return {@code false} if there is no previous generation
+	 */
+	boolean rollbackDatabase() throws IOException, SQLException;
+
+	/**
+	 * Applies the inserted, modified and removed rows of an update in one step.
+	 */
+	void applyChanges(CatalogDiff diff) throws IOException, SQLException;
+
+	List<String> getBrands() throws SQLException;
+
+	List<String> getModels(String brand) throws SQLException;
+
+	List<String> getModelsByFuel(String brand, String fuel) throws SQLException;
+
+	List<String> getFuel(String brand, String model) throws SQLException;
+
+	List<String> getFuelByBrand(String brand) throws SQLException;
+
+	List<String> getCarIds(String brand, String model, String fuel) throws SQLException;
+
+	/**
+	 * @return the car or {@code null} if there is no car with this id
+	 */
+	Car getCar(String id) throws SQLException;
+
+	/**
+	 * Looks up many cars at once, e.g. for a batch calculation.
+	 *
+	 * @return the cars that exist, by id
+	 */
+	Map<String, Car> getCars(Collection<String> ids) throws SQLException;
+
+	default ObjectNode getBrandsAsJson() throws SQLException {
+		return toJson("brands", getBrands());
+	}
+
+	default ObjectNode getModelsAsJson(String brand) throws SQLException {
+		return toJson("models", getModels(brand));
+	}
+
+	default ObjectNode getModelsByFuelAsJson(String brand, String fuel) throws SQLException {
+		return toJson("models", getModelsByFuel(brand, fuel));
+	}
+
+	default ObjectNode getFuelAsJson(String brand, String model) throws SQLException {
+		return toJson("fuel", getFuel(brand, model));
+	}
+
+	default ObjectNode getFuelByBrandAsJson(String brand) throws SQLException {
+		return toJson("fuel", getFuelByBrand(brand));
+	}
+
+	default ObjectNode getCarIdAsJson(String brand, String model, String fuel) throws SQLException {
+		List<String> idList = getCarIds(brand, model, fuel);
+
+		ObjectMapper objectMapper = new ObjectMapper();
+		ObjectNode resultNode = objectMapper.createObjectNode();
+		resultNode.put("id", idList.get(0));
+
+		return resultNode;
+	}
+
+	static ObjectNode toJson(String field, List<String> values) {
+		ObjectMapper objectMapper = new ObjectMapper();
+		ObjectNode resultNode = objectMapper.createObjectNode();
+		ArrayNode valuesNode = resultNode.putArray(field);
+
+		for (String value : values) valuesNode.add(value);
+
+		return resultNode;
+	}
+}
@@ -0,0 +1,73 @@
+package car.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Row level difference between the car database in the cache and a new export of the remote database.
+ */
+public class CatalogDiff {
+
+	public static class Entry {
+		private final int id;
+		private final String[] record;
+
+		Entry(int id, String[] record) {
+			this.id = id;
+			this.record = record;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public String[] getRecord() {
+			return record;
+		}
+	}
+
+	private final List<Entry> insertions = new ArrayList<>();
+	private final List<Entry> updates = new ArrayList<>();
+	private final List<Integer> deletions = new ArrayList<>();
+
+	void insert(int id, String[] record) {
+		insertions.add(new Entry(id, record));
+	}
+
+	void update(int id, String[] record) {
+		updates.add(new Entry(id, record));
+	}
+
+	void delete(List<Integer> ids) {
+		deletions.addAll(ids);
+	}
+
+	public List<Entry> getInsertions() {
+		return insertions;
+	}
+
+	public List<Entry> getUpdates() {
+		return updates;
+	}
+
+	public List<Integer> getDeletions() {
+		return deletions;
+	}
+
+	public int size() {
+		return insertions.size() + updates.size() + deletions.size();
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public String toString() {
+		return "CatalogDiff{" +
+				"insertions=" + insertions.size() +
+				", updates=" + updates.size() +
+				", deletions=" + deletions.size() +
+				'}';
+	}
+}
@@ -0,0 +1,54 @@
+package car.database;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import util.CO2FootprintProperties;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Current {@link CarCatalog} of a {@link CarRepository}. Every new catalog is also written as snapshot to
+ * {@code CarCatalogSnapshotFile}, which is mapped on startup, so lookups can be answered before the first refresh.
+ */
+class CatalogHolder {
+
+	private static final Log log = LogFactory.getLog(CatalogHolder.class);
+
+	private final AtomicReference<CarCatalog> catalog = new AtomicReference<>();
+
+	private final Path snapshotFile;
+
+	CatalogHolder(CO2FootprintProperties properties) {
+		this.snapshotFile = Paths.get(properties.getCarCatalogSnapshotFile());
+		if (!Files.exists(snapshotFile)) return;
+
+		long startTime = System.currentTimeMillis();
+		try {
+			catalog.set(CarCatalog.mapSnapshot(snapshotFile));
+			log.info("Serving " + catalog.get() + " from snapshot " + snapshotFile + ", mapped in " + (System.currentTimeMillis() - startTime) + "ms");
+		} catch (IOException | RuntimeException e) {
+			// the catalog is rebuilt from the repository anyway
+			log.warn("Ignoring unreadable catalog snapshot " + snapshotFile + ": " + e.getMessage());
+		}
+	}
+
+	CarCatalog get() {
+		return catalog.get();
+	}
+
+	/**
+	 * Replaces the current catalog and its snapshot. A snapshot that can't be written only costs a slower next start.
+	 */
+	void set(CarCatalog newCatalog) {
+		catalog.set(newCatalog);
+		try {
+			newCatalog.writeSnapshot(snapshotFile);
+		} catch (IOException e) {
+			log.warn("Could not write catalog snapshot " + snapshotFile + ": " + e.getMessage());
+		}
+	}
+}
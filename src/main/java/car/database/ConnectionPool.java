@@ -0,0 +1,259 @@
+package car.database;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import util.CO2FootprintProperties;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of connections to the MySQL cache database.
+ * <p>
+ * Connections are borrowed with {@link #getConnection()} and returned to the pool by closing them, so callers can use
+ * try-with-resources as with any other JDBC connection. At most {@code CacheDatabasePoolMaxSize} connections are open
+ * at the same time; callers wait up to {@code CacheDatabasePoolAcquireTimeout} milliseconds for a free one.
+ * <p>
+ * The pool is owned by the {@link Driver} that is shared by all beans of the agent.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+	private static final Log log = LogFactory.getLog(ConnectionPool.class);
+
+	// connections that were used within this time span are handed out without validation
+	private static final long VALIDATION_BYPASS_MILLIS = 500;
+	private static final long HOUSEKEEPING_INTERVAL_MILLIS = 10000;
+
+	private final String url;
+	private final String user;
+	private final String password;
+
+	private final int minSize;
+	private final int maxSize;
+	private final long acquireTimeout;
+	private final int validationTimeout;
+	private final long leakDetectionThreshold;
+
+	private final Semaphore permits;
+	private final LinkedBlockingDeque<IdleConnection> idleConnections = new LinkedBlockingDeque<>();
+	private final Map<Connection, Lease> leases = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService housekeeper;
+
+	private volatile boolean closed = false;
+
+	public ConnectionPool(CO2FootprintProperties properties) throws ClassNotFoundException {
+		Class.forName("com.mysql.jdbc.Driver");
+
+		this.url = "jdbc:mysql://" +
+				properties.getCacheDatabaseHost() +
+				":" +
+				properties.getCacheDatabasePort() +
+				"/" +
+				properties.getCacheDatabaseName() +
+				"?autoReconnect=true&useSSL=" +
+				properties.getCacheDatabaseUseSSL() +
+				"&rewriteBatchedStatements=true&useJDBCCompliantTimezoneShift=true&useLegacyDatetimeCode=false&serverTimezone=Europe/Berlin";
+		this.user = properties.getCacheDatabaseUser();
+		this.password = properties.getCacheDatabasePassword();
+
+		this.minSize = properties.getCacheDatabasePoolMinSize();
+		this.maxSize = properties.getCacheDatabasePoolMaxSize();
+		this.acquireTimeout = properties.getCacheDatabasePoolAcquireTimeout();
+		this.validationTimeout = properties.getCacheDatabasePoolValidationTimeout();
+		this.leakDetectionThreshold = properties.getCacheDatabasePoolLeakDetectionThreshold();
+		this.permits = new Semaphore(maxSize, true);
+
+		this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "ConnectionPool-housekeeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.housekeeper.scheduleWithFixedDelay(this::housekeeping, 0, HOUSEKEEPING_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Borrows a connection from the pool. Closing the returned connection hands it back to the pool.
+	 *
+	 * @return a validated connection
+	 * @throws SQLTimeoutException if no connection became available within the acquire timeout
+	 * @throws SQLException        if the pool is closed or a new connection could not be opened
+	 */
+	public Connection getConnection() throws SQLException {
+		if (closed) throw new SQLException("Connection pool is closed");
+
+		try {
+			if (!permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS)) {
+				throw new SQLTimeoutException("Timeout after " + acquireTimeout + "ms waiting for a database connection");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection", e);
+		}
+
+		try {
+			Connection physical = takeIdleConnection();
+			if (physical == null) physical = DriverManager.getConnection(url, user, password);
+
+			Connection pooled = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[]{Connection.class}, new PooledConnectionHandler(physical));
+			if (leakDetectionThreshold > 0) leases.put(pooled, new Lease());
+			return pooled;
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	private Connection takeIdleConnection() {
+		IdleConnection idle;
+		while ((idle = idleConnections.pollFirst()) != null) {
+			if (System.currentTimeMillis() - idle.since < VALIDATION_BYPASS_MILLIS || isValid(idle.connection)) {
+				return idle.connection;
+			}
+			closeQuietly(idle.connection);
+		}
+		return null;
+	}
+
+	private boolean isValid(Connection connection) {
+		try {
+			return connection.isValid(validationTimeout);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void giveBack(Connection pooled, Connection physical) {
+		leases.remove(pooled);
+		try {
+			if (closed || physical.isClosed()) {
+				closeQuietly(physical);
+				return;
+			}
+
+			// reset state a borrower might have left behind
+			if (!physical.getAutoCommit()) {
+				physical.rollback();
+				physical.setAutoCommit(true);
+			}
+			idleConnections.offerFirst(new IdleConnection(physical));
+		} catch (SQLException e) {
+			closeQuietly(physical);
+		} finally {
+			permits.release();
+		}
+	}
+
+	private void housekeeping() {
+		try {
+			// keep the configured minimum of connections open
+			while (!closed && idleConnections.size() + getBorrowedConnections() < minSize) {
+				idleConnections.offerLast(new IdleConnection(DriverManager.getConnection(url, user, password)));
+			}
+		} catch (SQLException e) {
+			log.warn("Could not open idle database connection: " + e.getMessage());
+		}
+
+		if (leakDetectionThreshold > 0) {
+			long now = System.currentTimeMillis();
+			for (Lease lease : leases.values()) {
+				if (!lease.reported && now - lease.since > leakDetectionThreshold) {
+					lease.reported = true;
+					log.warn("Possible connection leak: connection borrowed " + (now - lease.since) + "ms ago and not returned", lease.borrower);
+				}
+			}
+		}
+	}
+
+	public int getIdleConnections() {
+		return idleConnections.size();
+	}
+
+	public int getBorrowedConnections() {
+		return maxSize - permits.availablePermits();
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		housekeeper.shutdownNow();
+
+		IdleConnection idle;
+		while ((idle = idleConnections.pollFirst()) != null) closeQuietly(idle.connection);
+	}
+
+	private static void closeQuietly(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException ignored) {
+		}
+	}
+
+	private static class IdleConnection {
+		private final Connection connection;
+		private final long since = System.currentTimeMillis();
+
+		private IdleConnection(Connection connection) {
+			this.connection = connection;
+		}
+	}
+
+	private static class Lease {
+		private final long since = System.currentTimeMillis();
+		private final Throwable borrower = new Throwable("Connection borrowed here");
+		private volatile boolean reported = false;
+	}
+
+	private class PooledConnectionHandler implements InvocationHandler {
+
+		private final Connection physical;
+		private boolean returned = false;
+
+		private PooledConnectionHandler(Connection physical) {
+			this.physical = physical;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "close":
+					synchronized (this) {
+						if (!returned) {
+							returned = true;
+							giveBack((Connection) proxy, physical);
+						}
+					}
+					return null;
+				case "isClosed":
+					return returned || physical.isClosed();
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "PooledConnection[" + physical + "]";
+			}
+
+			if (returned) throw new SQLException("Connection has already been returned to the pool");
+
+			try {
+				return method.invoke(physical, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
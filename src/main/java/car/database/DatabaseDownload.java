@@ -0,0 +1,57 @@
+package car.database;
+
+import java.nio.file.Path;
+
+/**
+ * Result of a conditional download of the car database export.
+ */
+public class DatabaseDownload {
+
+	private final boolean modified;
+	private final Path file;
+	private final String etag;
+	private final String lastModified;
+	private final String fingerprint;
+
+	private DatabaseDownload(boolean modified, Path file, String etag, String lastModified, String fingerprint) {
+		this.modified = modified;
+		this.file = file;
+		this.etag = etag;
+		this.lastModified = lastModified;
+		this.fingerprint = fingerprint;
+	}
+
+	static DatabaseDownload notModified() {
+		return new DatabaseDownload(false, null, null, null, null);
+	}
+
+	static DatabaseDownload modified(Path file, String etag, String lastModified, String fingerprint) {
+		return new DatabaseDownload(true, file, etag, lastModified, fingerprint);
+	}
+
+	/**
+	 * @return {@code false} if the server answered the conditional request with 304 Not Modified
+	 */
+	public boolean isModified() {
+		return modified;
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	public String getEtag() {
+		return etag;
+	}
+
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * @return hex encoded SHA-256 of the downloaded export
+	 */
+	public String getFingerprint() {
+		return fingerprint;
+	}
+}
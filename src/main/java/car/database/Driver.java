@@ -1,238 +1,393 @@
 package car.database;
 
 import car.Car;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.opencsv.CSVParser;
-import com.opencsv.CSVParserBuilder;
-import com.opencsv.CSVReader;
-import com.opencsv.CSVReaderBuilder;
-import com.opencsv.exceptions.CsvException;
+import com.opencsv.exceptions.CsvValidationException;
 import util.CO2FootprintProperties;
+import util.SingleFlight;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static car.database.RestConsumer.translateFuelToAgentRepresentation;
 
-public class Driver {
+/**
+ * {@link CarRepository} backed by the MySQL cache database. Lookups are answered by the {@link CarCatalog} and fall
+ * back to the database if the catalog doesn't know the requested value.
+ */
+public class Driver implements CarRepository {
 
-	private final Connection myConn;
+	// columns of the car table in the order of the .csv export
+	private static final String[] COLUMNS = {"Brand", "Model", "Commercial_Model", "Precise_Model", "CNIT", "TW", "Fuel_Type", "Hybrid",
+			"Fiscale_Power", "`Puissance maximale`", "`Boîte de vitesse`", "Urban_Consumption", "Extra_Urban_Consumption", "Mixed_consumption",
+			"CO2", "`CO type I`", "HC", "NOx", "`HC+NOx`", "Particules", "`Masse vide euro min`", "`Masse vide euro max`", "`Champ v9`", "Year", "Style", "Gamme"};
+
+	private final ConnectionPool connectionPool;
 
 	private final CO2FootprintProperties properties;
 
-	public Driver(CO2FootprintProperties properties) throws SQLException, ClassNotFoundException {
-		this.properties = properties;
+	private final CatalogHolder catalog;
+
+	// identical queries that run at the same time share one database round trip
+	private final SingleFlight<String, ArrayList<String>> queries = new SingleFlight<>();
 
-		Class.forName("com.mysql.jdbc.Driver");
-		myConn = DriverManager.getConnection("jdbc:mysql://" +
-						properties.getCacheDatabaseHost() +
-						":" +
-						properties.getCacheDatabasePort() +
-						"/" +
-						properties.getCacheDatabaseName() +
-						"?autoReconnect=true&useSSL=" +
-						properties.getCacheDatabaseUseSSL() +
-						"&rewriteBatchedStatements=true&useJDBCCompliantTimezoneShift=true&useLegacyDatetimeCode=false&serverTimezone=Europe/Berlin",
-				properties.getCacheDatabaseUser(),
-				properties.getCacheDatabasePassword());
+	public Driver(CO2FootprintProperties properties) throws ClassNotFoundException {
+		this.properties = properties;
+		this.connectionPool = new ConnectionPool(properties);
+		this.catalog = new CatalogHolder(properties);
 	}
 
-	public void close() throws SQLException {
-		myConn.close();
+	@Override
+	public void close() {
+		connectionPool.close();
 	}
 
-	public void deleteAllRows() throws SQLException {
-		Statement myStmt = myConn.createStatement();
-		myStmt.executeUpdate("delete from " + properties.getCacheDatabaseTableName() + " where id > 9999");
+	@Override
+	public CarCatalog getCatalog() {
+		return catalog.get();
 	}
 
-	public void uploadDataToDatabase(InputStream dataInputStream) throws IOException, CsvException {
-		Reader reader = new InputStreamReader(dataInputStream);
+	@Override
+	public CarCatalog reloadCatalog() throws SQLException {
+		String query = "select id, Brand, Precise_Model, Fuel_Type, Urban_Consumption, Extra_Urban_Consumption, CO2 from " + properties.getCacheDatabaseTableName();
+		CarCatalog.Builder builder = new CarCatalog.Builder();
+
+		try (Connection connection = connectionPool.getConnection();
+			 PreparedStatement preparedStatement = connection.prepareStatement(query);
+			 ResultSet myRs = preparedStatement.executeQuery()) {
+			while (myRs.next()) {
+				try {
+					builder.add(myRs.getString("id"), myRs.getString("Brand"), myRs.getString("Precise_Model"), translateFuelToAgentRepresentation(myRs.getString("Fuel_Type")),
+							myRs.getString("Urban_Consumption"), myRs.getString("Extra_Urban_Consumption"), myRs.getString("Extra_Urban_Consumption"), myRs.getString("CO2"));
+				} catch (RuntimeException e) {
+					// rows without usable consumption data can't be used for calculations anyway
+				}
+			}
+		}
 
-		CSVParser csvParser = new CSVParserBuilder()
-				.withSeparator(';')
-				.build();
+		CarCatalog newCatalog = builder.build();
+		catalog.set(newCatalog);
+		return newCatalog;
+	}
 
-		CSVReader csvReader = new CSVReaderBuilder(reader)
-				.withSkipLines(1)
-				.withCSVParser(csvParser)
-				.build();
+	/**
+	 * Replaces the imported cars (id > 9999) with the given .csv export without interrupting readers.
+	 * <p>
+	 * The data is loaded into a shadow table next to the live table and verified. Afterwards both tables are switched
+	 * with a single atomic {@code rename table}. The replaced generation is kept as previous table, so
+	 * {@link #rollbackDatabase()} can restore it. If the verification fails, the live table stays untouched.
+	 *
+	 * @param dataInputStream .csv export of the car database
+	 * @param importState     state of this import, assigns the ids of the imported cars
+	 * @return statistics of the import into the shadow table
+	 */
+	@Override
+	public ImportStatistics refreshDatabase(InputStream dataInputStream, ImportState importState) throws IOException, CsvValidationException, SQLException {
+		String liveTable = properties.getCacheDatabaseTableName();
+		String shadowTable = getShadowTableName();
+
+		// cars with an id <= 9999 are maintained manually and carried over to every generation
+		executeUpdate("drop table if exists " + shadowTable);
+		executeUpdate("create table " + shadowTable + " like " + liveTable);
+		executeUpdate("insert into " + shadowTable + " select * from " + liveTable + " where id <= 9999");
+
+		ImportStatistics statistics = uploadDataToDatabase(dataInputStream, shadowTable, importState);
+		verifyShadowTable(statistics);
+
+		executeUpdate("drop table if exists " + getPreviousTableName());
+		executeUpdate("rename table " + liveTable + " to " + getPreviousTableName() + ", " + shadowTable + " to " + liveTable);
+
+		return statistics;
+	}
 
-		List<String[]> records = csvReader.readAll();
+	/**
+	 * Switches back to the generation that was replaced by the last {@link #refreshDatabase(InputStream, ImportState)}.
+	 *
+	 * @return {@code false} if there is no previous generation
+	 */
+	@Override
+	public boolean rollbackDatabase() throws SQLException {
+		if (!tableExists(getPreviousTableName())) return false;
+
+		String liveTable = properties.getCacheDatabaseTableName();
+		executeUpdate("drop table if exists " + getShadowTableName());
+		executeUpdate("rename table " + liveTable + " to " + getShadowTableName() + ", " + getPreviousTableName() + " to " + liveTable);
+		return true;
+	}
 
-		String query = "insert into " + properties.getCacheDatabaseTableName() + " (Brand, Model, Commercial_Model, Precise_Model, CNIT, TW, Fuel_Type, Hybrid, "
-				+ "Fiscale_Power, `Puissance maximale`, `Boîte de vitesse`, Urban_Consumption, Extra_Urban_Consumption, Mixed_consumption, "
-				+ "CO2, `CO type I`, HC, NOx, `HC+NOx`, Particules, `Masse vide euro min`, `Masse vide euro max`, `Champ v9`, Year, Style, Gamme, id) "
-				+ "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	private void verifyShadowTable(ImportStatistics statistics) throws SQLException {
+		long liveRows = countImportedRows(properties.getCacheDatabaseTableName());
+		long shadowRows = countImportedRows(getShadowTableName());
 
-		int newId = 10000;
-		PreparedStatement preparedStatement = null;
+		if (shadowRows != statistics.getInsertedRows()) {
+			throw new IllegalStateException("Shadow table contains " + shadowRows + " imported rows, but " + statistics.getInsertedRows() + " were inserted");
+		}
 
-		try {
-			preparedStatement = myConn.prepareStatement(query);
+		if (shadowRows == 0 || shadowRows < liveRows * properties.getCarDatabaseMinRowRatio()) {
+			throw new IllegalStateException("Shadow table contains only " + shadowRows + " imported rows compared to " + liveRows
+					+ " in the live table, keeping the live table");
+		}
+	}
 
-			for (String[] record : records) {
-				// prepare and execute only statements, that have necessary information like consumption
-				if (isRecordValid(record)) {
-					for (int i = 0; i < 26; i++) {
-						if (record[i].equals("")) preparedStatement.setNull(i + 1, Types.VARCHAR);
-						else preparedStatement.setString(i + 1, record[i]);
-					}
-					preparedStatement.setInt(27, newId);
-					preparedStatement.addBatch();
-					newId++;
-				}
-			}
+	private long countImportedRows(String table) throws SQLException {
+		try (Connection connection = connectionPool.getConnection();
+			 Statement myStmt = connection.createStatement();
+			 ResultSet myRs = myStmt.executeQuery("select count(*) from " + table + " where id > 9999")) {
+			myRs.next();
+			return myRs.getLong(1);
+		}
+	}
 
-		} catch (SQLException e) {
-			e.printStackTrace();
-		} finally {
-			try {
-				assert preparedStatement != null;
-				preparedStatement.executeBatch();
-			} catch (SQLException e) {
-				e.printStackTrace();
-			}
+	private boolean tableExists(String table) throws SQLException {
+		try (Connection connection = connectionPool.getConnection();
+			 ResultSet myRs = connection.getMetaData().getTables(connection.getCatalog(), null, table, null)) {
+			return myRs.next();
 		}
 	}
 
-	private Boolean isRecordValid(String[] record) {
-		if (record[0].equals("") || record[3].equals("") || record[6].equals("") || record[11].equals("")
-				|| record[12].equals("") || record[14].equals("")) {
-			return false;
+	private void executeUpdate(String statement) throws SQLException {
+		try (Connection connection = connectionPool.getConnection();
+			 Statement myStmt = connection.createStatement()) {
+			myStmt.executeUpdate(statement);
 		}
+	}
 
-		List<String> fuelTypes = new ArrayList<>();
-		fuelTypes.add(RestConsumer.translateFuelToDatabaseRepresentation("petrol"));
-		fuelTypes.add(RestConsumer.translateFuelToDatabaseRepresentation("diesel"));
-		fuelTypes.add(RestConsumer.translateFuelToDatabaseRepresentation("cng"));
-		fuelTypes.add(RestConsumer.translateFuelToDatabaseRepresentation("electricity"));
+	private String getShadowTableName() {
+		return properties.getCacheDatabaseTableName() + "_shadow";
+	}
 
-		return fuelTypes.contains(record[6]);
+	private String getPreviousTableName() {
+		return properties.getCacheDatabaseTableName() + "_previous";
 	}
 
-	private ArrayList<String> getDbResultList(PreparedStatement ps, String column) throws SQLException {
-		ArrayList<String> returnList = new ArrayList<>();
-		ResultSet myRs = ps.executeQuery();
-		while (myRs.next()) {
-			returnList.add(myRs.getString(column));
-		}
-		return returnList;
+	/**
+	 * Streams the car database .csv into the cache database with an {@link ImportPipeline}. Rows are parsed, validated
+	 * and inserted concurrently in batches of {@code CarDatabaseBatchSize} rows, so the memory needed does not depend on
+	 * the size of the dataset.
+	 *
+	 * @param dataInputStream .csv export of the car database, separated by ';' and with a header line
+	 * @param table           table the rows are inserted into
+	 * @return number of inserted and rejected rows and the throughput of the import
+	 */
+	private ImportStatistics uploadDataToDatabase(InputStream dataInputStream, String table, ImportState importState) throws IOException, CsvValidationException, SQLException {
+		return new ImportPipeline(connectionPool, properties).run(dataInputStream, getInsertQuery(table), importState);
 	}
 
-	public ObjectNode getBrandsAsJson() throws SQLException {
-		String query = "select distinct Brand from " + properties.getCacheDatabaseTableName();
-		PreparedStatement preparedStatement = myConn.prepareStatement(query);
-		ArrayList<String> brands = getDbResultList(preparedStatement, "Brand");
+	/**
+	 * Applies the inserted, modified and removed rows of an update to the live table in one transaction.
+	 */
+	@Override
+	public void applyChanges(CatalogDiff diff) throws SQLException {
+		String table = properties.getCacheDatabaseTableName();
 
-		ObjectMapper objectMapper = new ObjectMapper();
-		ObjectNode resultNode = objectMapper.createObjectNode();
-		ArrayNode brandsNode = resultNode.putArray("brands");
+		StringBuilder update = new StringBuilder("update " + table + " set ");
+		for (int i = 0; i < COLUMNS.length; i++) update.append(i == 0 ? "" : ", ").append(COLUMNS[i]).append("=?");
+		update.append(" where id=?");
 
-		for (String brand : brands) brandsNode.add(brand);
+		try (Connection connection = connectionPool.getConnection()) {
+			connection.setAutoCommit(false);
 
-		return resultNode;
+			try (PreparedStatement preparedStatement = connection.prepareStatement("delete from " + table + " where id=?")) {
+				int rowsInBatch = 0;
+				for (int id : diff.getDeletions()) {
+					preparedStatement.setInt(1, id);
+					preparedStatement.addBatch();
+					if (++rowsInBatch % properties.getCarDatabaseBatchSize() == 0) preparedStatement.executeBatch();
+				}
+				preparedStatement.executeBatch();
+			}
+
+			executeBatches(connection, update.toString(), diff.getUpdates());
+			executeBatches(connection, getInsertQuery(table), diff.getInsertions());
+
+			connection.commit();
+		}
 	}
 
-	public ObjectNode getModelsAsJson(String brand) throws SQLException {
-		String query = String.format("select distinct Precise_Model from %s where Brand=?", properties.getCacheDatabaseTableName());
-		PreparedStatement preparedStatement = myConn.prepareStatement(query);
-		preparedStatement.setString(1, brand);
-		ArrayList<String> models = getDbResultList(preparedStatement, "Precise_Model");
+	private void executeBatches(Connection connection, String query, List<CatalogDiff.Entry> entries) throws SQLException {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+			int rowsInBatch = 0;
+			for (CatalogDiff.Entry entry : entries) {
+				bindRecord(preparedStatement, entry.getRecord(), entry.getId());
+				preparedStatement.addBatch();
+				if (++rowsInBatch % properties.getCarDatabaseBatchSize() == 0) preparedStatement.executeBatch();
+			}
+			preparedStatement.executeBatch();
+		}
+	}
 
-		ObjectMapper objectMapper = new ObjectMapper();
-		ObjectNode resultNode = objectMapper.createObjectNode();
-		ArrayNode modelsNode = resultNode.putArray("models");
+	private static String getInsertQuery(String table) {
+		StringBuilder placeholders = new StringBuilder();
+		for (int i = 0; i < COLUMNS.length; i++) placeholders.append("?, ");
+		return "insert into " + table + " (" + String.join(", ", COLUMNS) + ", id) values (" + placeholders + "?)";
+	}
 
-		for (String model : models) modelsNode.add(model);
+	// binds the columns of the record to the parameters 1 to 26 and the id to parameter 27
+	static void bindRecord(PreparedStatement preparedStatement, String[] record, int id) throws SQLException {
+		for (int i = 0; i < COLUMNS.length; i++) {
+			if (record[i].equals("")) preparedStatement.setNull(i + 1, Types.VARCHAR);
+			else preparedStatement.setString(i + 1, record[i]);
+		}
+		preparedStatement.setInt(COLUMNS.length + 1, id);
+	}
 
-		return resultNode;
+	private ArrayList<String> getDbResultList(String query, String column, String... parameters) throws SQLException {
+		String key = query + '\u0000' + column + '\u0000' + String.join("\u0000", parameters);
+		return new ArrayList<>(queries.call(key, () -> queryDbResultList(query, column, parameters)));
 	}
 
-	public ObjectNode getModelsByFuelAsJson(String brand, String fuel) throws SQLException {
-		String query = String.format("select distinct Precise_Model from %s where Brand=? and Fuel_Type=?", properties.getCacheDatabaseTableName());
-		PreparedStatement preparedStatement = myConn.prepareStatement(query);
-		preparedStatement.setString(1, brand);
-		preparedStatement.setString(2, RestConsumer.translateFuelToDatabaseRepresentation(fuel));
-		ArrayList<String> models = getDbResultList(preparedStatement, "Precise_Model");
+	private ArrayList<String> queryDbResultList(String query, String column, String... parameters) throws SQLException {
+		ArrayList<String> returnList = new ArrayList<>();
+		try (Connection connection = connectionPool.getConnection();
+			 PreparedStatement ps = connection.prepareStatement(query)) {
+			for (int i = 0; i < parameters.length; i++) ps.setString(i + 1, parameters[i]);
 
-		ObjectMapper objectMapper = new ObjectMapper();
-		ObjectNode resultNode = objectMapper.createObjectNode();
-		ArrayNode modelsNode = resultNode.putArray("models");
+			try (ResultSet myRs = ps.executeQuery()) {
+				while (myRs.next()) {
+					returnList.add(myRs.getString(column));
+				}
+			}
+		}
+		return returnList;
+	}
 
-		for (String model : models) modelsNode.add(model);
+	@Override
+	public List<String> getBrands() throws SQLException {
+		CarCatalog carCatalog = catalog.get();
+		List<String> brands = carCatalog == null ? null : carCatalog.getBrands();
+		if (brands != null) return brands;
 
-		return resultNode;
+		String query = "select distinct Brand from " + properties.getCacheDatabaseTableName();
+		return getDbResultList(query, "Brand");
 	}
 
-	public ObjectNode getFuelAsJson(String brand, String model) throws SQLException {
-		String query = String.format("select distinct Fuel_Type from %s where Brand=? and Precise_Model=?", properties.getCacheDatabaseTableName());
-		PreparedStatement preparedStatement = myConn.prepareStatement(query);
-		preparedStatement.setString(1, brand);
-		preparedStatement.setString(2, model);
-		ArrayList<String> fuelList = getDbResultList(preparedStatement, "Fuel_Type");
+	@Override
+	public List<String> getModels(String brand) throws SQLException {
+		CarCatalog carCatalog = catalog.get();
+		List<String> models = carCatalog == null ? null : carCatalog.getModels(brand);
+		if (models != null) return models;
 
-		ObjectMapper objectMapper = new ObjectMapper();
-		ObjectNode resultNode = objectMapper.createObjectNode();
-		ArrayNode fuelsNode = resultNode.putArray("fuel");
+		String query = String.format("select distinct Precise_Model from %s where Brand=?", properties.getCacheDatabaseTableName());
+		return getDbResultList(query, "Precise_Model", brand);
+	}
 
-		for (String fuel : fuelList) fuelsNode.add(translateFuelToAgentRepresentation(fuel));
+	@Override
+	public List<String> getModelsByFuel(String brand, String fuel) throws SQLException {
+		CarCatalog carCatalog = catalog.get();
+		List<String> models = carCatalog == null ? null : carCatalog.getModelsByFuel(brand, fuel);
+		if (models != null) return models;
 
-		return resultNode;
+		String query = String.format("select distinct Precise_Model from %s where Brand=? and Fuel_Type=?", properties.getCacheDatabaseTableName());
+		return getDbResultList(query, "Precise_Model", brand, RestConsumer.translateFuelToDatabaseRepresentation(fuel));
 	}
 
-	public ObjectNode getFuelByBrandAsJson(String brand) throws SQLException {
-		String query = String.format("select distinct Fuel_Type from %s where Brand=?", properties.getCacheDatabaseTableName());
-		PreparedStatement preparedStatement = myConn.prepareStatement(query);
-		preparedStatement.setString(1, brand);
-		ArrayList<String> fuelList = getDbResultList(preparedStatement, "Fuel_Type");
+	@Override
+	public List<String> getFuel(String brand, String model) throws SQLException {
+		CarCatalog carCatalog = catalog.get();
+		List<String> fuelList = carCatalog == null ? null : carCatalog.getFuel(brand, model);
+		if (fuelList != null) return fuelList;
 
-		ObjectMapper objectMapper = new ObjectMapper();
-		ObjectNode resultNode = objectMapper.createObjectNode();
-		ArrayNode fuelsNode = resultNode.putArray("fuel");
+		String query = String.format("select distinct Fuel_Type from %s where Brand=? and Precise_Model=?", properties.getCacheDatabaseTableName());
+		return toAgentRepresentation(getDbResultList(query, "Fuel_Type", brand, model));
+	}
 
-		for (String fuel : fuelList) fuelsNode.add(translateFuelToAgentRepresentation(fuel));
+	@Override
+	public List<String> getFuelByBrand(String brand) throws SQLException {
+		CarCatalog carCatalog = catalog.get();
+		List<String> fuelList = carCatalog == null ? null : carCatalog.getFuelByBrand(brand);
+		if (fuelList != null) return fuelList;
 
-		return resultNode;
+		String query = String.format("select distinct Fuel_Type from %s where Brand=?", properties.getCacheDatabaseTableName());
+		return toAgentRepresentation(getDbResultList(query, "Fuel_Type", brand));
 	}
 
-	public ObjectNode getCarIdAsJson(String brand, String model, String fuel) throws SQLException {
+	@Override
+	public List<String> getCarIds(String brand, String model, String fuel) throws SQLException {
+		CarCatalog carCatalog = catalog.get();
+		List<String> idList = carCatalog == null ? null : carCatalog.getCarIds(brand, model, fuel);
+		if (idList != null) return idList;
+
 		String query = String.format("select id from %s where " +
 				"Brand=? and " +
 				"Precise_Model=? and " +
 				"Fuel_Type=?", properties.getCacheDatabaseTableName());
-		PreparedStatement preparedStatement = myConn.prepareStatement(query);
-		preparedStatement.setString(1, brand);
-		preparedStatement.setString(2, model);
-		preparedStatement.setString(3, RestConsumer.translateFuelToDatabaseRepresentation(fuel));
-		ArrayList<String> idList = getDbResultList(preparedStatement, "id");
-
-		ObjectMapper objectMapper = new ObjectMapper();
-		ObjectNode resultNode = objectMapper.createObjectNode();
-		resultNode.put("id", idList.get(0));
+		return getDbResultList(query, "id", brand, model, RestConsumer.translateFuelToDatabaseRepresentation(fuel));
+	}
 
-		return resultNode;
+	private static List<String> toAgentRepresentation(List<String> fuelList) {
+		List<String> translated = new ArrayList<>(fuelList.size());
+		for (String fuel : fuelList) translated.add(translateFuelToAgentRepresentation(fuel));
+		return translated;
 	}
 
+	@Override
 	public Car getCar(String id) throws SQLException {
+		CarCatalog carCatalog = catalog.get();
+		Car car = carCatalog == null ? null : carCatalog.getCar(id);
+		if (car != null) return car;
+
 		String query = String.format("select * from %s where id=?", properties.getCacheDatabaseTableName());
-		PreparedStatement preparedStatement = myConn.prepareStatement(query);
-		preparedStatement.setString(1, id);
+		try (Connection connection = connectionPool.getConnection();
+			 PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+			preparedStatement.setString(1, id);
 
-		ResultSet myRs = preparedStatement.executeQuery();
-		if (myRs.first()) {
-			return new Car(id, myRs.getString("Brand"), myRs.getString("Precise_Model"), translateFuelToAgentRepresentation(myRs.getString("Fuel_Type")), myRs.getString("Urban_Consumption"),
-					myRs.getString("Extra_Urban_Consumption"), myRs.getString("Extra_Urban_Consumption"), myRs.getString("CO2"));
+			try (ResultSet myRs = preparedStatement.executeQuery()) {
+				if (myRs.next()) return toCar(myRs);
+			}
 		}
 
 		return null;
 	}
 
+	/**
+	 * Reads the cars the catalog doesn't know with one query per {@code CarDatabaseBatchSize} ids.
+	 */
+	@Override
+	public Map<String, Car> getCars(Collection<String> ids) throws SQLException {
+		Map<String, Car> cars = new HashMap<>();
+		List<String> missing = new ArrayList<>();
+
+		CarCatalog carCatalog = catalog.get();
+		for (String id : ids) {
+			Car car = carCatalog == null ? null : carCatalog.getCar(id);
+			if (car != null) cars.put(id, car);
+			else missing.add(id);
+		}
+		if (missing.isEmpty()) return cars;
+
+		try (Connection connection = connectionPool.getConnection()) {
+			int batchSize = properties.getCarDatabaseBatchSize();
+			for (int start = 0; start < missing.size(); start += batchSize) {
+				List<String> batch = missing.subList(start, Math.min(start + batchSize, missing.size()));
+
+				StringBuilder placeholders = new StringBuilder();
+				for (int i = 0; i < batch.size(); i++) placeholders.append(i == 0 ? "?" : ", ?");
+				String query = String.format("select * from %s where id in (%s)", properties.getCacheDatabaseTableName(), placeholders);
+
+				try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+					for (int i = 0; i < batch.size(); i++) preparedStatement.setString(i + 1, batch.get(i));
+
+					try (ResultSet myRs = preparedStatement.executeQuery()) {
+						while (myRs.next()) {
+							Car car = toCar(myRs);
+							cars.put(car.getId(), car);
+						}
+					}
+				}
+			}
+		}
+
+		return cars;
+	}
+
+	private static Car toCar(ResultSet myRs) throws SQLException {
+		return new Car(myRs.getString("id"), myRs.getString("Brand"), myRs.getString("Precise_Model"), translateFuelToAgentRepresentation(myRs.getString("Fuel_Type")), myRs.getString("Urban_Consumption"),
+				myRs.getString("Extra_Urban_Consumption"), myRs.getString("Extra_Urban_Consumption"), myRs.getString("CO2"));
+	}
+
 }
@@ -0,0 +1,268 @@
+package car.database;
+
+import car.Car;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.CSVWriter;
+import com.opencsv.ICSVParser;
+import com.opencsv.ICSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+import util.CO2FootprintProperties;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static car.database.RestConsumer.translateFuelToAgentRepresentation;
+
+/**
+ * {@link CarRepository} that keeps the car database in a local file ({@code CarRepositoryFile}) and answers all
+ * lookups from the {@link CarCatalog} in memory, so no database server is needed.
+ * <p>
+ * The file contains the imported columns of the .csv export followed by the id. Like the tables of the MySQL backend,
+ * there are three generations: the live file, a shadow file an update is written to and the previous file a rollback
+ * restores. Cars with an id <= 9999 are maintained manually in the live file and carried over to every generation.
+ */
+public class EmbeddedCarRepository implements CarRepository {
+
+	private static final int ID_COLUMN = CarDatabaseExport.COLUMN_COUNT;
+
+	private final CO2FootprintProperties properties;
+
+	private final Path liveFile;
+	private final Path shadowFile;
+	private final Path previousFile;
+
+	private final CatalogHolder catalog;
+
+	public EmbeddedCarRepository(CO2FootprintProperties properties) throws IOException {
+		this.properties = properties;
+		this.liveFile = Paths.get(properties.getCarRepositoryFile()).toAbsolutePath();
+		this.shadowFile = liveFile.resolveSibling(liveFile.getFileName() + ".shadow");
+		this.previousFile = liveFile.resolveSibling(liveFile.getFileName() + ".previous");
+		this.catalog = new CatalogHolder(properties);
+
+		// without a snapshot, reading the file is still cheap enough to serve the cars right away
+		if (catalog.get() == null && Files.exists(liveFile)) reloadCatalog();
+	}
+
+	@Override
+	public void close() {
+		// nothing to release, the file is only open during reads and updates
+	}
+
+	@Override
+	public CarCatalog getCatalog() {
+		return catalog.get();
+	}
+
+	@Override
+	public synchronized CarCatalog reloadCatalog() throws IOException {
+		CarCatalog.Builder builder = new CarCatalog.Builder();
+
+		if (Files.exists(liveFile)) {
+			try (CSVReader reader = openStoreReader(liveFile)) {
+				String[] row;
+				while ((row = reader.readNext()) != null) {
+					try {
+						builder.add(row[ID_COLUMN], row[0], row[3], translateFuelToAgentRepresentation(row[6]), row[11], row[12], row[12], row[14]);
+					} catch (RuntimeException e) {
+						// rows without usable consumption data can't be used for calculations anyway
+					}
+				}
+			} catch (CsvValidationException e) {
+				throw new IOException("Corrupt car repository file " + liveFile, e);
+			}
+		}
+
+		CarCatalog newCatalog = builder.build();
+		catalog.set(newCatalog);
+		return newCatalog;
+	}
+
+	/**
+	 * Writes the manually maintained cars and the valid rows of the export into the shadow file, verifies it and moves
+	 * it live. The replaced live file becomes the previous file.
+	 */
+	@Override
+	public synchronized ImportStatistics refreshDatabase(InputStream dataInputStream, ImportState importState) throws IOException, CsvValidationException {
+		ImportStatistics statistics = new ImportStatistics();
+		int batchSize = properties.getCarDatabaseBatchSize();
+		long liveRows = 0;
+
+		try (ICSVWriter writer = openStoreWriter(shadowFile)) {
+			if (Files.exists(liveFile)) {
+				try (CSVReader reader = openStoreReader(liveFile)) {
+					String[] row;
+					while ((row = reader.readNext()) != null) {
+						if (Integer.parseInt(row[ID_COLUMN]) <= 9999) writer.writeNext(row, false);
+						else liveRows++;
+					}
+				}
+			}
+
+			try (CSVReader csvReader = CarDatabaseExport.openCsvReader(dataInputStream)) {
+				int rowsInBatch = 0;
+				String[] record;
+				while ((record = csvReader.readNext()) != null) {
+					if (!CarDatabaseExport.isRecordValid(record)) {
+						statistics.rowRejected();
+						continue;
+					}
+
+					writer.writeNext(toRow(record, importState.assign(record).getId()), false);
+					if (++rowsInBatch == batchSize) {
+						statistics.batchInserted(rowsInBatch);
+						rowsInBatch = 0;
+					}
+				}
+				if (rowsInBatch > 0) statistics.batchInserted(rowsInBatch);
+			}
+		}
+		statistics.finish();
+
+		long shadowRows = statistics.getInsertedRows();
+		if (shadowRows == 0 || shadowRows < liveRows * properties.getCarDatabaseMinRowRatio()) {
+			Files.deleteIfExists(shadowFile);
+			throw new IllegalStateException("Shadow file contains only " + shadowRows + " imported rows compared to " + liveRows
+					+ " in the live file, keeping the live file");
+		}
+
+		if (Files.exists(liveFile)) Files.move(liveFile, previousFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		Files.move(shadowFile, liveFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		return statistics;
+	}
+
+	@Override
+	public synchronized boolean rollbackDatabase() throws IOException {
+		if (!Files.exists(previousFile)) return false;
+
+		Files.move(liveFile, shadowFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		Files.move(previousFile, liveFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return true;
+	}
+
+	/**
+	 * Rewrites the live file with the changes applied and replaces it atomically.
+	 */
+	@Override
+	public synchronized void applyChanges(CatalogDiff diff) throws IOException {
+		Set<String> deletions = new HashSet<>();
+		for (int id : diff.getDeletions()) deletions.add(String.valueOf(id));
+
+		Map<String, CatalogDiff.Entry> updates = new HashMap<>();
+		for (CatalogDiff.Entry entry : diff.getUpdates()) updates.put(String.valueOf(entry.getId()), entry);
+
+		try (ICSVWriter writer = openStoreWriter(shadowFile)) {
+			if (Files.exists(liveFile)) {
+				try (CSVReader reader = openStoreReader(liveFile)) {
+					String[] row;
+					while ((row = reader.readNext()) != null) {
+						String id = row[ID_COLUMN];
+						if (deletions.contains(id)) continue;
+
+						CatalogDiff.Entry update = updates.get(id);
+						writer.writeNext(update == null ? row : toRow(update.getRecord(), update.getId()), false);
+					}
+				} catch (CsvValidationException e) {
+					throw new IOException("Corrupt car repository file " + liveFile, e);
+				}
+			}
+
+			for (CatalogDiff.Entry entry : diff.getInsertions()) writer.writeNext(toRow(entry.getRecord(), entry.getId()), false);
+		}
+
+		Files.move(shadowFile, liveFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	@Override
+	public List<String> getBrands() {
+		CarCatalog carCatalog = catalog.get();
+		return orEmpty(carCatalog == null ? null : carCatalog.getBrands());
+	}
+
+	@Override
+	public List<String> getModels(String brand) {
+		CarCatalog carCatalog = catalog.get();
+		return orEmpty(carCatalog == null ? null : carCatalog.getModels(brand));
+	}
+
+	@Override
+	public List<String> getModelsByFuel(String brand, String fuel) {
+		CarCatalog carCatalog = catalog.get();
+		return orEmpty(carCatalog == null ? null : carCatalog.getModelsByFuel(brand, fuel));
+	}
+
+	@Override
+	public List<String> getFuel(String brand, String model) {
+		CarCatalog carCatalog = catalog.get();
+		return orEmpty(carCatalog == null ? null : carCatalog.getFuel(brand, model));
+	}
+
+	@Override
+	public List<String> getFuelByBrand(String brand) {
+		CarCatalog carCatalog = catalog.get();
+		return orEmpty(carCatalog == null ? null : carCatalog.getFuelByBrand(brand));
+	}
+
+	@Override
+	public List<String> getCarIds(String brand, String model, String fuel) {
+		CarCatalog carCatalog = catalog.get();
+		return orEmpty(carCatalog == null ? null : carCatalog.getCarIds(brand, model, fuel));
+	}
+
+	@Override
+	public Car getCar(String id) {
+		CarCatalog carCatalog = catalog.get();
+		return carCatalog == null ? null : carCatalog.getCar(id);
+	}
+
+	@Override
+	public Map<String, Car> getCars(Collection<String> ids) {
+		Map<String, Car> cars = new HashMap<>();
+		for (String id : ids) {
+			Car car = getCar(id);
+			if (car != null) cars.put(id, car);
+		}
+		return cars;
+	}
+
+	private static List<String> orEmpty(List<String> values) {
+		return values == null ? Collections.emptyList() : values;
+	}
+
+	private static String[] toRow(String[] record, int id) {
+		String[] row = Arrays.copyOf(record, ID_COLUMN + 1);
+		row[ID_COLUMN] = String.valueOf(id);
+		return row;
+	}
+
+	// quotes are escaped by doubling them, so backslashes in the data are not special
+	private static CSVReader openStoreReader(Path file) throws IOException {
+		return new CSVReaderBuilder(Files.newBufferedReader(file, StandardCharsets.UTF_8))
+				.withCSVParser(new CSVParserBuilder()
+						.withSeparator(';')
+						.withEscapeChar(ICSVParser.NULL_CHARACTER)
+						.build())
+				.build();
+	}
+
+	private static ICSVWriter openStoreWriter(Path file) throws IOException {
+		return new CSVWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), ';', ICSVWriter.DEFAULT_QUOTE_CHARACTER,
+				ICSVWriter.DEFAULT_QUOTE_CHARACTER, ICSVWriter.DEFAULT_LINE_END);
+	}
+}
@@ -0,0 +1,216 @@
+package car.database;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+import util.CO2FootprintProperties;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Imports the .csv export of the car database in three stages that run concurrently:
+ * <ol>
+ *     <li>the calling thread parses the stream into chunks of rows,</li>
+ *     <li>a validator thread drops invalid rows and assigns the ids,</li>
+ *     <li>{@code CarDatabaseWriterThreads} writers insert the batches, each on its own pooled connection.</li>
+ * </ol>
+ * The stages are connected by queues of {@code CarDatabaseQueueCapacity} chunks of {@code CarDatabaseBatchSize} rows,
+ * so a slow stage blocks the ones before it and the memory needed stays bounded.
+ */
+class ImportPipeline {
+
+	// marks the end of a queue
+	private static final List<String[]> END = Collections.emptyList();
+	private static final List<CatalogDiff.Entry> END_OF_BATCHES = Collections.emptyList();
+
+	private final ConnectionPool connectionPool;
+	private final int batchSize;
+	private final int commitInterval;
+	private final int writerThreads;
+
+	private final BlockingQueue<List<String[]>> parsedChunks;
+	private final BlockingQueue<List<CatalogDiff.Entry>> batches;
+
+	private volatile boolean failed = false;
+
+	ImportPipeline(ConnectionPool connectionPool, CO2FootprintProperties properties) {
+		this.connectionPool = connectionPool;
+		this.batchSize = properties.getCarDatabaseBatchSize();
+		this.commitInterval = properties.getCarDatabaseCommitInterval();
+		// leave one connection of the pool to the readers
+		this.writerThreads = Math.max(1, Math.min(properties.getCarDatabaseWriterThreads(), properties.getCacheDatabasePoolMaxSize() - 1));
+		this.parsedChunks = new ArrayBlockingQueue<>(properties.getCarDatabaseQueueCapacity());
+		this.batches = new ArrayBlockingQueue<>(properties.getCarDatabaseQueueCapacity());
+	}
+
+	ImportStatistics run(InputStream dataInputStream, String insertQuery, ImportState importState) throws IOException, CsvValidationException, SQLException {
+		ImportStatistics statistics = new ImportStatistics();
+		AtomicInteger threadNumber = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(writerThreads + 1,
+				runnable -> new Thread(runnable, "ImportPipeline-" + threadNumber.incrementAndGet()));
+
+		try {
+			List<Future<?>> stages = new ArrayList<>();
+			stages.add(executor.submit(() -> {
+				validate(importState, statistics);
+				return null;
+			}));
+			for (int i = 0; i < writerThreads; i++) {
+				stages.add(executor.submit(() -> {
+					write(insertQuery, statistics);
+					return null;
+				}));
+			}
+
+			try {
+				parse(dataInputStream);
+			} catch (IOException | CsvValidationException | RuntimeException e) {
+				failed = true;
+				throw e;
+			}
+
+			awaitAll(stages);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		statistics.finish();
+		return statistics;
+	}
+
+	private void parse(InputStream dataInputStream) throws IOException, CsvValidationException {
+		try (CSVReader csvReader = CarDatabaseExport.openCsvReader(dataInputStream)) {
+			List<String[]> chunk = new ArrayList<>(batchSize);
+			String[] record;
+			while (!failed && (record = csvReader.readNext()) != null) {
+				chunk.add(record);
+				if (chunk.size() == batchSize) {
+					put(parsedChunks, chunk);
+					chunk = new ArrayList<>(batchSize);
+				}
+			}
+			if (!chunk.isEmpty()) put(parsedChunks, chunk);
+			put(parsedChunks, END);
+		}
+	}
+
+	// ids have to be assigned in the order of the export, so there is only one validator
+	private void validate(ImportState importState, ImportStatistics statistics) {
+		try {
+			List<String[]> chunk;
+			while ((chunk = take(parsedChunks)) != END) {
+				List<CatalogDiff.Entry> batch = new ArrayList<>(chunk.size());
+				for (String[] record : chunk) {
+					// prepare and execute only statements, that have necessary information like consumption
+					if (CarDatabaseExport.isRecordValid(record)) batch.add(new CatalogDiff.Entry(importState.assign(record).getId(), record));
+					else statistics.rowRejected();
+				}
+				if (!batch.isEmpty()) put(batches, batch);
+			}
+		} catch (RuntimeException e) {
+			failed = true;
+			throw e;
+		} finally {
+			for (int i = 0; i < writerThreads; i++) put(batches, END_OF_BATCHES);
+		}
+	}
+
+	private void write(String insertQuery, ImportStatistics statistics) throws SQLException {
+		try (Connection connection = connectionPool.getConnection();
+			 PreparedStatement preparedStatement = connection.prepareStatement(insertQuery)) {
+			connection.setAutoCommit(false);
+
+			int uncommittedBatches = 0;
+			List<CatalogDiff.Entry> batch;
+			while ((batch = take(batches)) != END_OF_BATCHES) {
+				for (CatalogDiff.Entry entry : batch) {
+					Driver.bindRecord(preparedStatement, entry.getRecord(), entry.getId());
+					preparedStatement.addBatch();
+				}
+				preparedStatement.executeBatch();
+				statistics.batchInserted(batch.size());
+
+				if (++uncommittedBatches == commitInterval) {
+					connection.commit();
+					uncommittedBatches = 0;
+				}
+			}
+			connection.commit();
+		} catch (SQLException | RuntimeException e) {
+			failed = true;
+			throw e;
+		}
+	}
+
+	/**
+	 * Blocks while the queue is full, but gives up as soon as a stage failed.
+	 */
+	private <T> void put(BlockingQueue<T> queue, T element) {
+		try {
+			while (!failed && !queue.offer(element, 100, TimeUnit.MILLISECONDS)) {
+				// wait for the next stage
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failed = true;
+		}
+	}
+
+	private <T> T take(BlockingQueue<T> queue) {
+		try {
+			T element;
+			while ((element = queue.poll(100, TimeUnit.MILLISECONDS)) == null) {
+				if (failed) throw new AbortedException();
+			}
+			return element;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failed = true;
+			throw new AbortedException();
+		}
+	}
+
+	/**
+	 * Waits for all stages and rethrows the exception that caused the import to fail, not the ones of the stages that
+	 * were aborted because of it.
+	 */
+	private void awaitAll(List<Future<?>> stages) throws SQLException {
+		Throwable failure = null;
+		for (Future<?> stage : stages) {
+			try {
+				stage.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Import interrupted", e);
+			} catch (ExecutionException e) {
+				if (failure == null || failure instanceof AbortedException) failure = e.getCause();
+			}
+		}
+
+		if (failure instanceof SQLException) throw (SQLException) failure;
+		if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+		if (failure != null) throw new SQLException(failure);
+	}
+
+	private static class AbortedException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private AbortedException() {
+			super("Import aborted, because another stage failed");
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package car.database;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * State of the last successful import of the car database, persisted in the {@code CarDatabaseStateFile}.
+ * <p>
+ * Besides the HTTP validators (ETag, Last-Modified) and the fingerprint of the downloaded export, the state maps every
+ * imported row to the id it got in the cache database and a hash of its content. This keeps the ids of unchanged cars
+ * stable across updates and allows computing which rows were inserted, modified or removed.
+ */
+public class ImportState {
+
+	public enum Change {NEW, MODIFIED, UNCHANGED}
+
+	public static class Row {
+		private final int id;
+		private final long hash;
+		private final Change change;
+
+		private Row(int id, long hash, Change change) {
+			this.id = id;
+			this.hash = hash;
+			this.change = change;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public Change getChange() {
+			return change;
+		}
+	}
+
+	// ids below are reserved for cars that are maintained manually
+	private static final int FIRST_IMPORTED_ID = 10000;
+
+	private String etag;
+	private String lastModified;
+	private String fingerprint;
+
+	private final Map<String, Row> rows = new HashMap<>();
+	private int nextId = FIRST_IMPORTED_ID;
+
+	// only set while a new state is assembled from an import
+	private final ImportState previous;
+	private final Map<String, Integer> occurrences;
+
+	private ImportState(ImportState previous) {
+		this.previous = previous;
+		this.occurrences = previous == null ? null : new HashMap<>();
+		if (previous != null) this.nextId = previous.nextId;
+	}
+
+	/**
+	 * @return the persisted state or an empty state if the file doesn't exist
+	 */
+	public static ImportState load(Path file) throws IOException {
+		ImportState state = new ImportState(null);
+		if (!Files.exists(file)) return state;
+
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("#etag=")) state.etag = emptyToNull(line.substring(6));
+				else if (line.startsWith("#lastModified=")) state.lastModified = emptyToNull(line.substring(14));
+				else if (line.startsWith("#fingerprint=")) state.fingerprint = emptyToNull(line.substring(13));
+				else if (line.startsWith("#nextId=")) state.nextId = Integer.parseInt(line.substring(8));
+				else if (!line.isEmpty()) {
+					String[] fields = line.split("\t");
+					state.rows.put(fields[0], new Row(Integer.parseInt(fields[1]), Long.parseLong(fields[2]), Change.UNCHANGED));
+				}
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Writes the state to a temporary file first and moves it over {@code file} afterwards, so a crash never leaves a
+	 * half written state behind.
+	 */
+	public void save(Path file) throws IOException {
+		Path absolute = file.toAbsolutePath();
+		Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+
+		try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			writer.write("#etag=" + nullToEmpty(etag) + "\n");
+			writer.write("#lastModified=" + nullToEmpty(lastModified) + "\n");
+			writer.write("#fingerprint=" + nullToEmpty(fingerprint) + "\n");
+			writer.write("#nextId=" + nextId + "\n");
+			for (Map.Entry<String, Row> entry : rows.entrySet()) {
+				writer.write(entry.getKey() + "\t" + entry.getValue().id + "\t" + entry.getValue().hash + "\n");
+			}
+		}
+
+		Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return an empty state for the next import that reuses the ids of this state
+	 */
+	public ImportState next(String etag, String lastModified, String fingerprint) {
+		ImportState next = new ImportState(this);
+		next.etag = etag;
+		next.lastModified = lastModified;
+		next.fingerprint = fingerprint;
+		return next;
+	}
+
+	/**
+	 * Registers a valid record of the current import and assigns its id. Records that were already part of the
+	 * previous import keep their id.
+	 */
+	public Row assign(String[] record) {
+		String key = key(record);
+		int occurrence = occurrences.merge(key, 1, Integer::sum);
+		if (occurrence > 1) key = key + "#" + occurrence;
+
+		long hash = hash(record);
+		Row previousRow = previous.rows.get(key);
+
+		Row row;
+		if (previousRow == null) row = new Row(nextId++, hash, Change.NEW);
+		else if (previousRow.hash != hash) row = new Row(previousRow.id, hash, Change.MODIFIED);
+		else row = new Row(previousRow.id, hash, Change.UNCHANGED);
+
+		rows.put(key, row);
+		return row;
+	}
+
+	/**
+	 * @return ids of the previous import whose records were not assigned in this import
+	 */
+	public List<Integer> getRemovedIds() {
+		List<Integer> removed = new ArrayList<>();
+		for (Map.Entry<String, Row> entry : previous.rows.entrySet()) {
+			if (!rows.containsKey(entry.getKey())) removed.add(entry.getValue().id);
+		}
+		return removed;
+	}
+
+	public void setValidators(String etag, String lastModified) {
+		this.etag = etag;
+		this.lastModified = lastModified;
+	}
+
+	public boolean isEmpty() {
+		return rows.isEmpty();
+	}
+
+	public int size() {
+		return rows.size();
+	}
+
+	public String getEtag() {
+		return etag;
+	}
+
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * The type approval number (CNIT) and the type/variant/version (TW) identify a car. Records that share both are
+	 * told apart by their order of appearance.
+	 */
+	private static String key(String[] record) {
+		String key = record[4] + "|" + record[5];
+		return key.replace('\t', ' ').replace('\n', ' ');
+	}
+
+	// 64 bit FNV-1a over all imported columns
+	private static long hash(String[] record) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < 26; i++) {
+			String field = record[i];
+			for (int j = 0; j < field.length(); j++) {
+				hash ^= field.charAt(j);
+				hash *= 0x100000001b3L;
+			}
+			hash ^= 0x1f;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	private static String emptyToNull(String value) {
+		return value.isEmpty() ? null : value;
+	}
+
+	private static String nullToEmpty(String value) {
+		return value == null ? "" : value;
+	}
+}
@@ -0,0 +1,65 @@
+package car.database;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of one import of the car database .csv into the cache database. The counters are updated by all stages of
+ * the {@link ImportPipeline} concurrently.
+ */
+public class ImportStatistics {
+
+	private final long startTime = System.currentTimeMillis();
+	private volatile long endTime = -1;
+
+	private final AtomicLong insertedRows = new AtomicLong();
+	private final AtomicLong rejectedRows = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+
+	void rowRejected() {
+		rejectedRows.incrementAndGet();
+	}
+
+	void batchInserted(int rows) {
+		insertedRows.addAndGet(rows);
+		batches.incrementAndGet();
+	}
+
+	void finish() {
+		endTime = System.currentTimeMillis();
+	}
+
+	public long getInsertedRows() {
+		return insertedRows.get();
+	}
+
+	public long getRejectedRows() {
+		return rejectedRows.get();
+	}
+
+	public long getBatches() {
+		return batches.get();
+	}
+
+	public long getElapsedMillis() {
+		return (endTime < 0 ? System.currentTimeMillis() : endTime) - startTime;
+	}
+
+	/**
+	 * @return inserted and rejected rows per second
+	 */
+	public double getRowsPerSecond() {
+		long elapsed = Math.max(1, getElapsedMillis());
+		return (getInsertedRows() + getRejectedRows()) * 1000.0 / elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return "ImportStatistics{" +
+				"insertedRows=" + getInsertedRows() +
+				", rejectedRows=" + getRejectedRows() +
+				", batches=" + getBatches() +
+				", elapsedMillis=" + getElapsedMillis() +
+				", rowsPerSecond=" + String.format("%.1f", getRowsPerSecond()) +
+				'}';
+	}
+}
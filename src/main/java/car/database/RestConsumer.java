@@ -6,17 +6,22 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import util.CO2FootprintProperties;
+import util.RestClient;
 
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 
 public class RestConsumer {
@@ -28,9 +33,8 @@ public class RestConsumer {
 	}
 
 	public ObjectNode getBrandsAsJson() throws JsonProcessingException {
-		Thread.currentThread().setContextClassLoader(getClass().getClassLoader());
 		// request brands from remote database
-		Client client = ClientBuilder.newClient();
+		RestClient client = RestClient.of(RestClient.CAR_DATABASE);
 		String url = "https://data.opendatasoft.com/api/v2/catalog/datasets/vehicules-commercialises%40public/aggregates?select=marque&group_by=marque";
 		WebTarget webTarget = client.target(url);
 		Invocation.Builder invocationBuilder = webTarget.request(MediaType.APPLICATION_JSON);
@@ -44,19 +48,18 @@ public class RestConsumer {
 
 		for (JsonNode jsonNode : responseNode.get("aggregations")) addedNode.add(jsonNode.get("marque"));
 
-		client.close();
+		response.close();
 		return resultNode;
 	}
 
 	public ObjectNode getModelsAsJson(String brand) throws JsonProcessingException {
-		Thread.currentThread().setContextClassLoader(getClass().getClassLoader());
 		String url = "https://data.opendatasoft.com/api/v2/catalog/datasets/vehicules-commercialises%40public/aggregates?select=designation_commerciale&group_by=designation_commerciale&where=marque%20like%20%22"
 				+ brand
 				+ "%22";
 
 		url = url.replaceAll(" ", "%20");
 
-		Client client = ClientBuilder.newClient();
+		RestClient client = RestClient.of(RestClient.CAR_DATABASE);
 		WebTarget webTarget = client.target(url);
 		Invocation.Builder invocationBuilder = webTarget.request(MediaType.APPLICATION_JSON);
 		Response response = invocationBuilder.get();
@@ -70,13 +73,12 @@ public class RestConsumer {
 		for (JsonNode jsonNode : responseNode.get("aggregations"))
 			addedNode.add(jsonNode.get("designation_commerciale"));
 
-		client.close();
+		response.close();
 		return resultNode;
 
 	}
 
 	public ObjectNode getFuelAsJson(String brand, String model) throws JsonProcessingException {
-		Thread.currentThread().setContextClassLoader(getClass().getClassLoader());
 		String url = "https://data.opendatasoft.com/api/v2/catalog/datasets/vehicules-commercialises%40public/aggregates?select=carburant&group_by=carburant&where=marque%20like%20%22" +
 				brand +
 				"%22%20and%20designation_commerciale%20like%20%22" +
@@ -85,7 +87,7 @@ public class RestConsumer {
 
 		url = url.replaceAll(" ", "%20");
 
-		Client client = ClientBuilder.newClient();
+		RestClient client = RestClient.of(RestClient.CAR_DATABASE);
 		WebTarget webTarget = client.target(url);
 		Invocation.Builder invocationBuilder = webTarget.request(MediaType.APPLICATION_JSON);
 		Response response = invocationBuilder.get();
@@ -100,12 +102,11 @@ public class RestConsumer {
 			addedNode.add(fuel);
 		}
 
-		client.close();
+		response.close();
 		return resultNode;
 	}
 
 	public ObjectNode getCarIdAsJson(String brand, String model, String fuel) throws JsonProcessingException {
-		Thread.currentThread().setContextClassLoader(getClass().getClassLoader());
 		ObjectMapper objectMapper = new ObjectMapper();
 		ObjectNode resultNode = objectMapper.createObjectNode();
 
@@ -120,7 +121,7 @@ public class RestConsumer {
 
 		url = url.replaceAll(" ", "%20");
 
-		Client client = ClientBuilder.newClient();
+		RestClient client = RestClient.of(RestClient.CAR_DATABASE);
 		WebTarget webTarget = client.target(url);
 		Invocation.Builder invocationBuilder = webTarget.request(MediaType.APPLICATION_JSON);
 		Response response = invocationBuilder.get();
@@ -128,12 +129,11 @@ public class RestConsumer {
 		JsonNode responseNode = objectMapper.readTree(response.readEntity(String.class));
 		resultNode.put("id", responseNode.get("records").findValuesAsText("id").get(0));
 
-		client.close();
+		response.close();
 		return resultNode;
 	}
 
 	public HashMap<String, String> getCarData(String carID) throws JsonProcessingException {
-		Thread.currentThread().setContextClassLoader(getClass().getClassLoader());
 		HashMap<String, String> carMap = new HashMap<>();
 
 		String url = "https://data.opendatasoft.com/api/v2/catalog/datasets/vehicules-commercialises%40public/records/"
@@ -142,7 +142,7 @@ public class RestConsumer {
 
 		url = url.replaceAll(" ", "%20");
 
-		Client client = ClientBuilder.newClient();
+		RestClient client = RestClient.of(RestClient.CAR_DATABASE);
 		WebTarget webTarget = client.target(url);
 		Invocation.Builder invocationBuilder = webTarget.request(MediaType.APPLICATION_JSON);
 		Response response = invocationBuilder.get();
@@ -158,16 +158,50 @@ public class RestConsumer {
 		carMap.put("officialCO2", objectNode.get("fields").get("co2_g_km").asText());
 		carMap.put("fuel", translateFuelToAgentRepresentation(objectNode.get("fields").get("carburant").asText()));
 
-		client.close();
+		response.close();
 		return carMap;
 	}
 
-	public InputStream downloadDatabase() throws IOException {
-		URL url = new URL("https://data.opendatasoft.com/api/v2/catalog/datasets/vehicules-commercialises%40public/exports/csv?rows=" + properties.getCarDatabaseRows() + "&timezone=UTC&delimiter=%3B");
-
-		URLConnection urlConnection = url.openConnection();
-
-		return urlConnection.getInputStream();
+	/**
+	 * Downloads the .csv export of the car database into {@code target}, unless it didn't change since the download
+	 * that returned {@code etag} and {@code lastModified}.
+	 *
+	 * @param etag         ETag of the last imported download or {@code null}
+	 * @param lastModified Last-Modified header of the last imported download or {@code null}
+	 * @param target       file the export is written to
+	 * @return the download including the SHA-256 fingerprint of its content, or a not modified result
+	 * @throws IOException if the server answers with an error status or the transfer fails
+	 */
+	public DatabaseDownload downloadDatabase(String etag, String lastModified, Path target) throws IOException {
+		URL url = new URL(properties.getCarDatabaseExportUrl() + "?rows=" + properties.getCarDatabaseRows() + "&timezone=UTC&delimiter=%3B");
+
+		HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+		urlConnection.setConnectTimeout(properties.getCarDatabaseConnectTimeout());
+		urlConnection.setReadTimeout(properties.getCarDatabaseReadTimeout());
+		if (etag != null) urlConnection.setRequestProperty("If-None-Match", etag);
+		if (lastModified != null) urlConnection.setRequestProperty("If-Modified-Since", lastModified);
+
+		try {
+			int status = urlConnection.getResponseCode();
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED) return DatabaseDownload.notModified();
+			if (status != HttpURLConnection.HTTP_OK) {
+				throw new IOException("Downloading the car database failed with HTTP status " + status);
+			}
+
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			try (InputStream inputStream = new DigestInputStream(urlConnection.getInputStream(), digest)) {
+				Files.copy(inputStream, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			StringBuilder fingerprint = new StringBuilder();
+			for (byte b : digest.digest()) fingerprint.append(String.format("%02x", b));
+
+			return DatabaseDownload.modified(target, urlConnection.getHeaderField("ETag"), urlConnection.getHeaderField("Last-Modified"), fingerprint.toString());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			urlConnection.disconnect();
+		}
 	}
 
 	public static String translateFuelToAgentRepresentation(String fuel) {
@@ -1,31 +1,37 @@
-package publictransport;
-
-public class PublicTransportConsumption {
-
-	/********** DATA **********/
-
-	private static final double PT_SD_BUS_DIESEL = 0.0044; 		// Public Transport Short-Distance Bus Diesel (kg/km per seat)
-	private static final double PT_SD_TRAIN_ELECTRICITY = 23.0;	// Public Transport Short-Distance Train Electricity (Wh/km per seat)
-
-	private static final double PT_LD_ICE_ELECTRICITY = 32.0; 	// Public Transport Long-Distance ICE Electricity (Wh/km per seat)
-	private static final double PT_LD_IC_ELECTRICITY = 22.0;	// Public Transport Long-Distance IC/EC Electricity (Wh/km per seat)
-
-	/********** METHODS **********/
-
-	public static double publicTransportConsumption(String distanceType, String vehicleClass, String engine) {
-		if (distanceType.equals("sd")) {
-			if (vehicleClass.equals("bus")) return PT_SD_BUS_DIESEL;
-			if (vehicleClass.equals("train")) return PT_SD_TRAIN_ELECTRICITY;
-		}
-
-		if (distanceType.equals("ld")) {
-			if (vehicleClass.equals("ice")) return PT_LD_ICE_ELECTRICITY;
-			if (vehicleClass.equals("ic")) {
-				if (engine.equals("electricity")) return PT_LD_IC_ELECTRICITY;
-			}
-		}
-
-		throw new IllegalArgumentException("illegal argument(s)");
-	}
-
-}
+package publictransport;
+
+import car.FuelType;
+
+public class PublicTransportConsumption {
+
+	public enum DistanceType {SHORT, LONG}
+
+	public enum VehicleClass {BUS, TRAIN, ICE, IC}
+
+	/********** DATA **********/
+
+	private static final double PT_SD_BUS_DIESEL = 0.0044; 		// Public Transport Short-Distance Bus Diesel (kg/km per seat)
+	private static final double PT_SD_TRAIN_ELECTRICITY = 23.0;	// Public Transport Short-Distance Train Electricity (Wh/km per seat)
+
+	private static final double PT_LD_ICE_ELECTRICITY = 32.0; 	// Public Transport Long-Distance ICE Electricity (Wh/km per seat)
+	private static final double PT_LD_IC_ELECTRICITY = 22.0;	// Public Transport Long-Distance IC/EC Electricity (Wh/km per seat)
+
+	/********** METHODS **********/
+
+	public static double publicTransportConsumption(DistanceType distanceType, VehicleClass vehicleClass, FuelType engine) {
+		if (distanceType == DistanceType.SHORT) {
+			if (vehicleClass == VehicleClass.BUS) return PT_SD_BUS_DIESEL;
+			if (vehicleClass == VehicleClass.TRAIN) return PT_SD_TRAIN_ELECTRICITY;
+		}
+
+		if (distanceType == DistanceType.LONG) {
+			if (vehicleClass == VehicleClass.ICE) return PT_LD_ICE_ELECTRICITY;
+			if (vehicleClass == VehicleClass.IC) {
+				if (engine == FuelType.ELECTRICITY) return PT_LD_IC_ELECTRICITY;
+			}
+		}
+
+		throw new IllegalArgumentException("illegal argument(s)");
+	}
+
+}
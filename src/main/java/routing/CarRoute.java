@@ -1,73 +1,132 @@
-package routing;
-
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import util.CO2FootprintProperties;
-
-import javax.ws.rs.core.Response;
-
-public class CarRoute {
-
-	private Place start;
-	private Place destination;
-
-	private Double urbanKM;
-	private Double nonUrbanKM;
-	private Double autobahnKM;
-
-	public CarRoute(Double urbanKM, Double nonUrbanKM, Double autobahnKM) {
-		this.urbanKM = urbanKM;
-		this.nonUrbanKM = nonUrbanKM;
-		this.autobahnKM = autobahnKM;
-	}
-
-	public CarRoute(Place start, Place destination, CO2FootprintProperties properties) {
-		this.start = start;
-		this.destination = destination;
-		try {
-			calculateKilometers(properties);
-		} catch (JsonProcessingException e) {
-			e.printStackTrace();
-		}
-	}
-
-	private void calculateKilometers(CO2FootprintProperties properties) throws JsonProcessingException {
-		this.urbanKM = 0.0;
-		this.nonUrbanKM = 0.0;
-		this.autobahnKM = 0.0;
-
-		ObjectMapper objectMapper = new ObjectMapper();
-
-		OpenRouteServiceAccessor ORSAccessor = new OpenRouteServiceAccessor(properties);
-		Response response = ORSAccessor.calculateRoute(start, destination);
-
-		JsonNode responseNode = objectMapper.readTree(response.readEntity(String.class));
-		JsonNode stepsNode = responseNode.path("routes").get(0).path("segments").get(0).path("steps");
-
-		for (JsonNode step : stepsNode) {
-			double distance = step.path("distance").asDouble() / 1000;
-			double duration = step.path("duration").asDouble();
-
-			if (distance > 0) {
-				double v = distance / ((duration / 60) / 60);
-
-				if (v < 50) urbanKM += distance;
-				else if (v >= 50 && v < 100) nonUrbanKM += distance;
-				else autobahnKM += distance;
-			}
-		}
-	}
-
-	public Double getUrbanKM() {
-		return urbanKM;
-	}
-
-	public Double getNonUrbanKM() {
-		return nonUrbanKM;
-	}
-
-	public Double getAutobahnKM() {
-		return autobahnKM;
-	}
-}
+package routing;
+
+import util.CO2FootprintProperties;
+
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+public class CarRoute {
+
+	private Place start;
+	private Place destination;
+
+	private double urbanKM;
+	private double nonUrbanKM;
+	private double autobahnKM;
+
+	private double durationSeconds;
+
+	// estimated by the RouteEstimator instead of calculated by OpenRouteService
+	private boolean estimated;
+
+	// typical speeds in km/h of the road classes, used if a route has no duration
+	private static final double URBAN_SPEED = 30;
+	private static final double NON_URBAN_SPEED = 75;
+	private static final double AUTOBAHN_SPEED = 120;
+
+	public CarRoute(double urbanKM, double nonUrbanKM, double autobahnKM) {
+		this.urbanKM = urbanKM;
+		this.nonUrbanKM = nonUrbanKM;
+		this.autobahnKM = autobahnKM;
+		this.durationSeconds = estimateDurationSeconds(urbanKM, nonUrbanKM, autobahnKM);
+	}
+
+	public CarRoute(double urbanKM, double nonUrbanKM, double autobahnKM, double durationSeconds) {
+		this.urbanKM = urbanKM;
+		this.nonUrbanKM = nonUrbanKM;
+		this.autobahnKM = autobahnKM;
+		this.durationSeconds = durationSeconds;
+	}
+
+	CarRoute(double urbanKM, double nonUrbanKM, double autobahnKM, double durationSeconds, boolean estimated) {
+		this(urbanKM, nonUrbanKM, autobahnKM, durationSeconds);
+		this.estimated = estimated;
+	}
+
+	private CarRoute(Place start, Place destination) {
+		this.start = start;
+		this.destination = destination;
+	}
+
+	/**
+	 * Requests the route from OpenRouteService without blocking the calling thread. A failed request or a response
+	 * without a route completes the future exceptionally.
+	 */
+	public static CompletableFuture<CarRoute> calculateAsync(Place start, Place destination, CO2FootprintProperties properties) {
+		OpenRouteServiceAccessor ORSAccessor = new OpenRouteServiceAccessor(properties);
+		return ORSAccessor.calculateRouteAsync(start, destination).thenApply(response -> {
+			CarRoute route = new CarRoute(start, destination);
+			try {
+				route.calculateKilometers(response);
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+			return route;
+		});
+	}
+
+	/**
+	 * @throws IllegalStateException if the response contains no route
+	 */
+	private void calculateKilometers(Response response) throws IOException {
+		this.urbanKM = 0.0;
+		this.nonUrbanKM = 0.0;
+		this.autobahnKM = 0.0;
+		this.durationSeconds = 0.0;
+
+		boolean found;
+		try (InputStream inputStream = response.readEntity(InputStream.class)) {
+			found = OpenRouteServiceParser.readSteps(inputStream, this::addStep);
+		} finally {
+			response.close();
+		}
+		if (!found) throw new IllegalStateException("OpenRouteService returned no route (HTTP status " + response.getStatus() + ")");
+	}
+
+	private void addStep(double distanceMeters, double duration) {
+		double distance = distanceMeters / 1000;
+		durationSeconds += duration;
+
+		if (distance > 0) {
+			double v = distance / ((duration / 60) / 60);
+
+			if (v < 50) urbanKM += distance;
+			else if (v >= 50 && v < 100) nonUrbanKM += distance;
+			else autobahnKM += distance;
+		}
+	}
+
+	public double getUrbanKM() {
+		return urbanKM;
+	}
+
+	public double getNonUrbanKM() {
+		return nonUrbanKM;
+	}
+
+	public double getAutobahnKM() {
+		return autobahnKM;
+	}
+
+	/**
+	 * @return the duration of the route according to OpenRouteService, or estimated from the distances on each road
+	 * class if the route was given by its length
+	 */
+	public double getDurationSeconds() {
+		return durationSeconds;
+	}
+
+	/**
+	 * @return {@code true} if the route was estimated by the {@link RouteEstimator}
+	 */
+	public boolean isEstimated() {
+		return estimated;
+	}
+
+	public static double estimateDurationSeconds(double urbanKM, double nonUrbanKM, double autobahnKM) {
+		return (urbanKM / URBAN_SPEED + nonUrbanKM / NON_URBAN_SPEED + autobahnKM / AUTOBAHN_SPEED) * 3600;
+	}
+}
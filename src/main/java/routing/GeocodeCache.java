@@ -0,0 +1,156 @@
+package routing;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import util.CO2FootprintProperties;
+import util.LruCache;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of {@link Place#searchPlace(String, CO2FootprintProperties)} by normalized query, for the address
+ * autocompletion that searches on every keystroke.
+ * <p>
+ * A query that adds words to a cached query is answered without OpenRouteService if the search for the cached query
+ * returned at least one and fewer than the maximum number of features, i.e. was not cut off: its places are filtered
+ * to those whose label contains every word of the longer query. The search is a full-text search, so this is an
+ * approximation. Every answer is among the places OpenRouteService found for the shorter query, but a place that
+ * only the longer query would find is missing until the cached result expires. Prefixes that end within a word are
+ * never reused, as a full-text search for a partial word finds other places than one for the whole word.
+ * <p>
+ * The cache holds at most {@code GeocodeCacheSize} queries, evicting the least recently used one, and every result
+ * expires {@code GeocodeCacheTtl} milliseconds after it was requested from OpenRouteService.
+ */
+public class GeocodeCache {
+
+	private final CO2FootprintProperties properties;
+	private final long ttlMillis;
+	private final LruCache<String, Entry> searches;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong prefixHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
+
+	public GeocodeCache(CO2FootprintProperties properties) {
+		this.properties = properties;
+		this.ttlMillis = properties.getGeocodeCacheTtl();
+		this.searches = new LruCache<>(properties.getGeocodeCacheSize());
+	}
+
+	/**
+	 * @return JSON object with the {@code places} found for the query, see
+	 * {@link Place#searchPlace(String, CO2FootprintProperties)}. The result is shared and must not be modified.
+	 */
+	public JsonNode search(String query) throws IOException {
+		String key = Place.normalize(query);
+		Entry entry = lookup(key);
+		if (entry != null) {
+			hits.incrementAndGet();
+			return entry.result;
+		}
+
+		// the normalized query separates its words by single spaces, so every space ends a prefix of whole words
+		for (int length = key.lastIndexOf(' '); length > 0; length = key.lastIndexOf(' ', length - 1)) {
+			Entry prefix = lookup(key.substring(0, length));
+			if (prefix != null && prefix.features > 0 && prefix.features < OpenRouteServiceAccessor.SEARCH_RESULTS) {
+				prefixHits.incrementAndGet();
+				JsonNode result = filter(prefix.result, key);
+				searches.put(key, new Entry(result, result.path("places").size(), prefix.expiresAtMillis));
+				return result;
+			}
+		}
+
+		misses.incrementAndGet();
+		Place.Search search = Place.search(query, properties);
+		searches.put(key, new Entry(search.result, search.features, System.currentTimeMillis() + ttlMillis));
+		return search.result;
+	}
+
+	private Entry lookup(String key) {
+		Entry entry = searches.get(key);
+		if (entry != null && entry.expiresAtMillis <= System.currentTimeMillis()) {
+			searches.remove(key);
+			expirations.incrementAndGet();
+			return null;
+		}
+		return entry;
+	}
+
+	// the places whose label contains every word of the query, the last one possibly incomplete
+	private static JsonNode filter(JsonNode result, String query) {
+		String[] words = query.split(" ");
+		ObjectNode filtered = JsonNodeFactory.instance.objectNode();
+		ArrayNode places = filtered.putArray("places");
+
+		for (JsonNode place : result.path("places")) {
+			String label = Place.normalize(place.path("label").asText());
+			boolean matches = true;
+			for (String word : words) {
+				if (!label.contains(word)) {
+					matches = false;
+					break;
+				}
+			}
+			if (matches) places.add(place);
+		}
+		return filtered;
+	}
+
+	public int size() {
+		return searches.size();
+	}
+
+	public int getMaxSize() {
+		return searches.getMaxSize();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of queries answered by filtering the results of a query with fewer words
+	 */
+	public long getPrefixHits() {
+		return prefixHits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getExpirations() {
+		return expirations.get();
+	}
+
+	public long getEvictions() {
+		return searches.getEvictions();
+	}
+
+	@Override
+	public String toString() {
+		return "GeocodeCache{" +
+				"size=" + size() +
+				", hits=" + getHits() +
+				", prefixHits=" + getPrefixHits() +
+				", misses=" + getMisses() +
+				'}';
+	}
+
+	private static class Entry {
+		private final JsonNode result;
+		// features returned by OpenRouteService, or the places left by filtering the result of a shorter query
+		private final int features;
+		private final long expiresAtMillis;
+
+		private Entry(JsonNode result, int features, long expiresAtMillis) {
+			this.result = result;
+			this.features = features;
+			this.expiresAtMillis = expiresAtMillis;
+		}
+	}
+}
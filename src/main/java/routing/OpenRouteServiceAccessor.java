@@ -1,71 +1,120 @@
 package routing;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.glassfish.jersey.client.ClientProperties;
 import util.CO2FootprintProperties;
+import util.RestClient;
 
-import javax.ws.rs.client.*;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.util.ArrayList;
-
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * All requests pass the concurrency limiter and the circuit breaker of the shared client; rejected requests fail at
+ * once with a {@link java.util.concurrent.RejectedExecutionException}.
+ */
 class OpenRouteServiceAccessor {
 
+	// maximum number of places returned by a search
+	static final int SEARCH_RESULTS = 20;
+
 	private final String API_KEY;
+	private final String BASE_URL;
+	private final RestClient client;
+
+	// read timeout of route and matrix requests, so a request that missed its deadline doesn't keep a connection
+	private final int routingReadTimeout;
 
 	public OpenRouteServiceAccessor(CO2FootprintProperties properties) {
 		this.API_KEY = properties.getOpenRouteServiceAPIKey();
+		this.BASE_URL = properties.getOpenRouteServiceBaseUrl();
+		this.client = RestClient.of(RestClient.OPEN_ROUTE_SERVICE);
+
+		long readTimeout = properties.getOpenRouteServiceReadTimeout() > 0 ? properties.getOpenRouteServiceReadTimeout() : Long.MAX_VALUE;
+		this.routingReadTimeout = (int) Math.min(readTimeout, properties.getRoutingDeadline());
 	}
 
-	public Response calculateRoute(Place start, Place destination) {
-		Thread.currentThread().setContextClassLoader(getClass().getClassLoader());
+	/**
+	 * Sends the route request with the async executor of the client.
+	 *
+	 * @return the response, which has to be closed by the caller to release the connection
+	 */
+	public CompletableFuture<Response> calculateRouteAsync(Place start, Place destination) {
+		return client.sendAsync(() -> routeRequest().rx().post(routeBody(start, destination)));
+	}
 
-		String url = "https://api.openrouteservice.org/v2/directions/driving-car/json";
-		String body = "{\"coordinates\":[["
-				+ start.getLongitude() + "," + start.getLatitude() + "],["
-				+ destination.getLongitude() + "," + destination.getLatitude()
-				+ "]],\"elevation\":\"false\",\"instructions\":\"true\",\"preference\":\"fastest\",\"units\":\"m\"}";
+	/**
+	 * Requests the distances and durations from every origin to every destination in one matrix request.
+	 */
+	public CompletableFuture<Response> calculateMatrixAsync(List<Place> origins, List<Place> destinations) {
+		StringBuilder body = new StringBuilder("{\"locations\":[");
+		for (int i = 0; i < origins.size() + destinations.size(); i++) {
+			Place place = i < origins.size() ? origins.get(i) : destinations.get(i - origins.size());
+			if (i > 0) body.append(',');
+			body.append('[').append(place.getLongitude()).append(',').append(place.getLatitude()).append(']');
+		}
+		body.append("],\"sources\":[");
+		for (int i = 0; i < origins.size(); i++) body.append(i > 0 ? "," : "").append(i);
+		body.append("],\"destinations\":[");
+		for (int i = 0; i < destinations.size(); i++) body.append(i > 0 ? "," : "").append(origins.size() + i);
+		body.append("],\"metrics\":[\"distance\",\"duration\"],\"units\":\"m\"}");
+
+		Invocation.Builder request = request(BASE_URL + "/v2/matrix/driving-car").property(ClientProperties.READ_TIMEOUT, routingReadTimeout);
+		return client.sendAsync(() -> request.rx().post(Entity.json(body.toString())));
+	}
 
-		Client client = ClientBuilder.newClient();
+	private Invocation.Builder routeRequest() {
+		return request(BASE_URL + "/v2/directions/driving-car/json").property(ClientProperties.READ_TIMEOUT, routingReadTimeout);
+	}
+
+	private Invocation.Builder request(String url) {
 		WebTarget webTarget = client.target(url);
 		Invocation.Builder invocationBuilder = webTarget.request(MediaType.APPLICATION_JSON);
 		invocationBuilder.header(HttpHeaders.AUTHORIZATION, API_KEY);
-
-		return invocationBuilder.post(Entity.json(body));
+		return invocationBuilder;
 	}
 
-	public ArrayList<Place> searchPlace(String query) throws JsonProcessingException {
-		Thread.currentThread().setContextClassLoader(getClass().getClassLoader());
+	private static Entity<String> routeBody(Place start, Place destination) {
+		String body = "{\"coordinates\":[["
+				+ start.getLongitude() + "," + start.getLatitude() + "],["
+				+ destination.getLongitude() + "," + destination.getLatitude()
+				+ "]],\"elevation\":\"false\",\"geometry\":\"false\",\"instructions\":\"true\",\"preference\":\"fastest\",\"units\":\"m\"}";
+		return Entity.json(body);
+	}
 
-		String url = "https://api.openrouteservice.org/geocode/search?api_key="
+	/**
+	 * Adds the places found for {@code query} to {@code places}.
+	 *
+	 * @return number of features OpenRouteService returned, at most {@link #SEARCH_RESULTS}
+	 */
+	public int searchPlace(String query, List<Place> places) throws IOException {
+		String url = BASE_URL + "/geocode/search?api_key="
 				+ API_KEY
 				+ "&text="
 				+ query
-				+ "&boundary.country=DE&layers=venue,address&size=20";
+				+ "&boundary.country=DE&layers=venue,address&size=" + SEARCH_RESULTS;
 		url = url.replaceAll(" ", "%20");
 
-		Client client = ClientBuilder.newClient();
 		WebTarget webTarget = client.target(url);
 		Invocation.Builder invocationBuilder = webTarget.request(MediaType.APPLICATION_JSON);
-		Response response = invocationBuilder.get();
-
-		ObjectMapper objectMapper = new ObjectMapper();
-		JsonNode responseNode = objectMapper.readTree(response.readEntity(String.class));
-		JsonNode featuresNode = responseNode.path("features");
-
-		ArrayList<Place> places = new ArrayList<>();
 
-		for (JsonNode feature : featuresNode) {
-			Label label = new Label(feature.path("properties"));
-			Double latitude = feature.path("geometry").path("coordinates").get(1).asDouble();
-			Double longitude = feature.path("geometry").path("coordinates").get(0).asDouble();
-			Place place = new Place(label, latitude, longitude);
-			places.add(place);
+		Response response = client.send(invocationBuilder::get);
+		// an error must not look like a search without results, which would be cached
+		if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+			response.close();
+			throw new IOException("OpenRouteService geocoding failed (HTTP status " + response.getStatus() + ")");
+		}
+		try (InputStream inputStream = response.readEntity(InputStream.class)) {
+			return OpenRouteServiceParser.readPlaces(inputStream, places);
+		} finally {
+			response.close();
 		}
-
-		return places;
 	}
 
 }
@@ -0,0 +1,188 @@
+package routing;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the responses of OpenRouteService straight from the stream. Only the values that are used are extracted,
+ * everything else is skipped without building a tree.
+ */
+final class OpenRouteServiceParser {
+
+	interface StepConsumer {
+		void step(double distanceMeters, double durationSeconds);
+	}
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	// properties of a geocoding result that are needed for its Label
+	private static final Set<String> LABEL_FIELDS = new HashSet<>(Arrays.asList(
+			"layer", "label", "name", "street", "housenumber", "postalcode", "locality", "county", "macrocounty", "region"));
+
+	private OpenRouteServiceParser() {
+	}
+
+	/**
+	 * Passes the distance and duration of every step of the first segment of the first route of a directions
+	 * response to {@code consumer}.
+	 *
+	 * @return {@code false} if the response contains no route, e.g. because it is an error
+	 */
+	static boolean readSteps(InputStream inputStream, StepConsumer consumer) throws IOException {
+		try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) throw new JsonParseException(parser, "Expected a JSON object");
+			if (!firstElement(parser, "routes") || !firstElement(parser, "segments") || !field(parser, "steps")
+					|| parser.currentToken() != JsonToken.START_ARRAY) {
+				return false;
+			}
+
+			while (parser.nextToken() == JsonToken.START_OBJECT) {
+				double distance = 0;
+				double duration = 0;
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String name = parser.getCurrentName();
+					parser.nextToken();
+					if (name.equals("distance")) distance = parser.getValueAsDouble();
+					else if (name.equals("duration")) duration = parser.getValueAsDouble();
+					else parser.skipChildren();
+				}
+				consumer.step(distance, duration);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Reads the {@code distances} and {@code durations} of a matrix response into {@code [0]} and {@code [1]}, row by
+	 * row. Missing routes are {@code NaN}.
+	 *
+	 * @return {@code null} if the response contains no matrix, e.g. because it is an error
+	 */
+	static double[][] readMatrix(InputStream inputStream, int rows, int columns) throws IOException {
+		double[] distances = null;
+		double[] durations = null;
+		try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) throw new JsonParseException(parser, "Expected a JSON object");
+
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String name = parser.getCurrentName();
+				parser.nextToken();
+				if (name.equals("distances")) distances = readTable(parser, rows, columns);
+				else if (name.equals("durations")) durations = readTable(parser, rows, columns);
+				else parser.skipChildren();
+			}
+		}
+		return distances == null || durations == null ? null : new double[][]{distances, durations};
+	}
+
+	private static double[] readTable(JsonParser parser, int rows, int columns) throws IOException {
+		if (parser.currentToken() != JsonToken.START_ARRAY) throw new JsonParseException(parser, "Expected an array of rows");
+
+		double[] table = new double[rows * columns];
+		int row = 0;
+		while (parser.nextToken() == JsonToken.START_ARRAY) {
+			int column = 0;
+			while (parser.nextToken() != JsonToken.END_ARRAY) {
+				if (row >= rows || column >= columns) throw new JsonParseException(parser, "Matrix larger than " + rows + "x" + columns);
+				table[row * columns + column++] = parser.currentToken() == JsonToken.VALUE_NULL ? Double.NaN : parser.getValueAsDouble();
+			}
+			if (column != columns) throw new JsonParseException(parser, "Expected " + columns + " values in row " + row);
+			row++;
+		}
+		if (row != rows) throw new JsonParseException(parser, "Expected " + rows + " rows");
+		return table;
+	}
+
+	/**
+	 * Adds the places of the features of a geocoding response to {@code places}. Features without a layer or
+	 * coordinates are left out.
+	 *
+	 * @return number of features in the response, including those left out
+	 */
+	static int readPlaces(InputStream inputStream, List<Place> places) throws IOException {
+		int features = 0;
+		try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) throw new JsonParseException(parser, "Expected a JSON object");
+			if (!field(parser, "features") || parser.currentToken() != JsonToken.START_ARRAY) return features;
+
+			while (parser.nextToken() == JsonToken.START_OBJECT) {
+				features++;
+				ObjectNode properties = JsonNodeFactory.instance.objectNode();
+				Double latitude = null;
+				Double longitude = null;
+
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String name = parser.getCurrentName();
+					parser.nextToken();
+					if (name.equals("properties") && parser.currentToken() == JsonToken.START_OBJECT) {
+						while (parser.nextToken() == JsonToken.FIELD_NAME) {
+							String property = parser.getCurrentName();
+							parser.nextToken();
+							if (LABEL_FIELDS.contains(property) && parser.currentToken().isScalarValue()) properties.put(property, parser.getText());
+							else parser.skipChildren();
+						}
+					} else if (name.equals("geometry") && parser.currentToken() == JsonToken.START_OBJECT) {
+						// without coordinates, field() has consumed the geometry up to its end already
+						if (field(parser, "coordinates")) {
+							if (parser.currentToken() == JsonToken.START_ARRAY) {
+								double[] position = new double[2];
+								int values = 0;
+								while (parser.nextToken() != JsonToken.END_ARRAY) {
+									if (values < 2 && parser.currentToken().isNumeric()) position[values++] = parser.getDoubleValue();
+									else parser.skipChildren();
+								}
+								if (values == 2) {
+									longitude = position[0];
+									latitude = position[1];
+								}
+							} else {
+								parser.skipChildren();
+							}
+							skipRest(parser);
+						}
+					} else {
+						parser.skipChildren();
+					}
+				}
+
+				if (latitude != null && properties.has("layer")) places.add(new Place(new Label(properties), latitude, longitude));
+			}
+		}
+		return features;
+	}
+
+	// moves to the value of the field of the current object, skipping the fields before it
+	private static boolean field(JsonParser parser, String name) throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String current = parser.getCurrentName();
+			parser.nextToken();
+			if (current.equals(name)) return true;
+			parser.skipChildren();
+		}
+		return false;
+	}
+
+	// moves into the first object of the array in the field of the current object
+	private static boolean firstElement(JsonParser parser, String name) throws IOException {
+		return field(parser, name) && parser.currentToken() == JsonToken.START_ARRAY && parser.nextToken() == JsonToken.START_OBJECT;
+	}
+
+	// skips the remaining fields of the current object
+	private static void skipRest(JsonParser parser) throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			parser.nextToken();
+			parser.skipChildren();
+		}
+	}
+}
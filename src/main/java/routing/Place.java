@@ -1,60 +1,97 @@
-package routing;
-
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import util.CO2FootprintProperties;
-
-import java.util.ArrayList;
-
-public class Place {
-
-	private final Label label;
-
-	private final Double latitude;
-	private final Double longitude;
-
-	public Place(Double latitude, Double longitude) {
-		label = null;
-		this.latitude = latitude;
-		this.longitude = longitude;
-	}
-
-	public Place(Label label, Double latitude, Double longitude) {
-		this.label = label;
-		this.latitude = latitude;
-		this.longitude = longitude;
-	}
-
-	public Label getLabel() {
-		return label;
-	}
-
-	public Double getLatitude() {
-		return latitude;
-	}
-
-	public Double getLongitude() {
-		return longitude;
-	}
-
-	public static JsonNode searchPlace(String query, CO2FootprintProperties properties) throws JsonProcessingException {
-		OpenRouteServiceAccessor ORSAccessor = new OpenRouteServiceAccessor(properties);
-		ArrayList<Place> placesList = ORSAccessor.searchPlace(query);
-
-		ObjectMapper objectMapper = new ObjectMapper();
-		ObjectNode resultNode = objectMapper.createObjectNode();
-		ArrayNode placesNode = resultNode.putArray("places");
-
-		for (Place p : placesList) {
-			ObjectNode newNode = placesNode.addObject();
-			newNode.put("label", p.getLabel().toString());
-			newNode.put("latitude", p.getLatitude());
-			newNode.put("longitude", p.getLongitude());
-		}
-
-		return resultNode;
-	}
-}
+package routing;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import util.CO2FootprintProperties;
+import util.SingleFlight;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Locale;
+
+public class Place {
+
+	// concurrent searches for the same query share one request to OpenRouteService
+	private static final SingleFlight<String, Search> SEARCHES = new SingleFlight<>();
+
+	// result of a search and the number of features OpenRouteService returned for it
+	static final class Search {
+		final JsonNode result;
+		final int features;
+
+		private Search(JsonNode result, int features) {
+			this.result = result;
+			this.features = features;
+		}
+	}
+
+	private final Label label;
+
+	private final Double latitude;
+	private final Double longitude;
+
+	public Place(Double latitude, Double longitude) {
+		label = null;
+		this.latitude = latitude;
+		this.longitude = longitude;
+	}
+
+	public Place(Label label, Double latitude, Double longitude) {
+		this.label = label;
+		this.latitude = latitude;
+		this.longitude = longitude;
+	}
+
+	public Label getLabel() {
+		return label;
+	}
+
+	public Double getLatitude() {
+		return latitude;
+	}
+
+	public Double getLongitude() {
+		return longitude;
+	}
+
+	public static JsonNode searchPlace(String query, CO2FootprintProperties properties) throws IOException {
+		return search(query, properties).result;
+	}
+
+	static Search search(String query, CO2FootprintProperties properties) throws IOException {
+		return SEARCHES.call(normalize(query), () -> requestPlaces(query, properties));
+	}
+
+	private static Search requestPlaces(String query, CO2FootprintProperties properties) throws IOException {
+		OpenRouteServiceAccessor ORSAccessor = new OpenRouteServiceAccessor(properties);
+		ArrayList<Place> placesList = new ArrayList<>();
+		int features = ORSAccessor.searchPlace(query, placesList);
+
+		ObjectMapper objectMapper = new ObjectMapper();
+		ObjectNode resultNode = objectMapper.createObjectNode();
+		ArrayNode placesNode = resultNode.putArray("places");
+
+		for (Place p : placesList) {
+			ObjectNode newNode = placesNode.addObject();
+			newNode.put("label", p.getLabel().toString());
+			newNode.put("latitude", p.getLatitude());
+			newNode.put("longitude", p.getLongitude());
+		}
+
+		return new Search(resultNode, features);
+	}
+
+	// queries that only differ in case and whitespace have the same results
+	static String normalize(String query) {
+		return query == null ? "" : query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * @return calls and coalesced calls of {@link #searchPlace(String, CO2FootprintProperties)}
+	 */
+	public static SingleFlight<String, ?> getSearches() {
+		return SEARCHES;
+	}
+}
@@ -1,20 +1,20 @@
-package routing;
-
-public class PublicTransportRoute {
-
-	private final Double shortDistanceKM;
-	private final Double longDistanceKM;
-
-	public PublicTransportRoute(Double shortDistanceKM, Double longDistanceKM) {
-		this.shortDistanceKM = shortDistanceKM;
-		this.longDistanceKM = longDistanceKM;
-	}
-
-	public Double getShortDistanceKM() {
-		return shortDistanceKM;
-	}
-
-	public Double getLongDistanceKM() {
-		return longDistanceKM;
-	}
-}
+package routing;
+
+public class PublicTransportRoute {
+
+	private final double shortDistanceKM;
+	private final double longDistanceKM;
+
+	public PublicTransportRoute(double shortDistanceKM, double longDistanceKM) {
+		this.shortDistanceKM = shortDistanceKM;
+		this.longDistanceKM = longDistanceKM;
+	}
+
+	public double getShortDistanceKM() {
+		return shortDistanceKM;
+	}
+
+	public double getLongDistanceKM() {
+		return longDistanceKM;
+	}
+}
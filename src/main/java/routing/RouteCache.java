@@ -0,0 +1,271 @@
+package routing;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import util.CO2FootprintProperties;
+import util.LruCache;
+import util.SingleFlight;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routes of OpenRouteService by start and destination. The coordinates are snapped to a grid of
+ * {@code RouteCachePrecision} degrees, so recurring trips between nearby points share one entry. Only the kilometers
+ * per road class and the duration of a route are kept.
+ * <p>
+ * The cache holds at most {@code RouteCacheSize} routes, evicting the least recently used one, and every route expires
+ * {@code RouteCacheTtl} milliseconds after it was requested from OpenRouteService. With {@code RouteCacheFile} the
+ * routes are saved on shutdown and loaded again on startup.
+ * <p>
+ * Concurrent requests for the same missing route share one request to OpenRouteService.
+ */
+public class RouteCache {
+
+	public interface RouteVisitor {
+		void visit(double startLatitude, double startLongitude, double destinationLatitude, double destinationLongitude,
+				   double urbanKM, double nonUrbanKM, double autobahnKM, double durationSeconds);
+	}
+
+	private static final Log log = LogFactory.getLog(RouteCache.class);
+
+	private final CO2FootprintProperties properties;
+	private final double precision;
+	private final long ttlMillis;
+	private final LruCache<Key, Entry> routes;
+	private final SingleFlight<Key, CarRoute> requests = new SingleFlight<>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
+
+	public RouteCache(CO2FootprintProperties properties) {
+		this.properties = properties;
+		this.precision = properties.getRouteCachePrecision();
+		this.ttlMillis = properties.getRouteCacheTtl();
+		this.routes = new LruCache<>(properties.getRouteCacheSize());
+	}
+
+	/**
+	 * @return the cached route or, if there is none, the route requested from OpenRouteService without blocking the
+	 * calling thread
+	 *
+	 * @see CarRoute#calculateAsync(Place, Place, CO2FootprintProperties)
+	 */
+	public CompletableFuture<CarRoute> getRouteAsync(Place start, Place destination) {
+		Key key = key(start, destination);
+		CarRoute cached = lookup(key);
+		if (cached != null) return CompletableFuture.completedFuture(cached);
+
+		return requests.callAsync(key, () -> CarRoute.calculateAsync(start, destination, properties).thenApply(route -> {
+			store(key, route);
+			return route;
+		}));
+	}
+
+	private Key key(Place start, Place destination) {
+		return new Key(quantize(start.getLatitude()), quantize(start.getLongitude()),
+				quantize(destination.getLatitude()), quantize(destination.getLongitude()));
+	}
+
+	private CarRoute lookup(Key key) {
+		Entry entry = routes.get(key);
+		if (entry != null && entry.expiresAtMillis > System.currentTimeMillis()) {
+			hits.incrementAndGet();
+			return new CarRoute(entry.urbanKM, entry.nonUrbanKM, entry.autobahnKM, entry.durationSeconds);
+		}
+		if (entry != null) {
+			routes.remove(key);
+			expirations.incrementAndGet();
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	private void store(Key key, CarRoute route) {
+		// an empty route is most likely a failed request
+		if (route.getUrbanKM() + route.getNonUrbanKM() + route.getAutobahnKM() > 0) {
+			routes.put(key, new Entry(route.getUrbanKM(), route.getNonUrbanKM(), route.getAutobahnKM(), route.getDurationSeconds(),
+					System.currentTimeMillis() + ttlMillis));
+		}
+	}
+
+	private long quantize(double degrees) {
+		return Math.round(degrees / precision);
+	}
+
+	/**
+	 * Loads the routes saved by {@link #save(Path)} that have not expired yet.
+	 *
+	 * @return number of loaded routes
+	 */
+	public int load(Path file) throws IOException {
+		if (!Files.exists(file)) return 0;
+
+		long now = System.currentTimeMillis();
+		int loaded = 0;
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+			// routes of another grid don't match any key
+			if (line == null || Double.parseDouble(line) != precision) return 0;
+
+			while ((line = reader.readLine()) != null) {
+				String[] values = line.split(";");
+				if (values.length != 9) {
+					log.warn("Skipping malformed line of route cache " + file + ": " + line);
+					continue;
+				}
+
+				long expiresAtMillis = Long.parseLong(values[8]);
+				if (expiresAtMillis <= now) continue;
+
+				routes.put(new Key(Long.parseLong(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2]), Long.parseLong(values[3])),
+						new Entry(Double.parseDouble(values[4]), Double.parseDouble(values[5]), Double.parseDouble(values[6]),
+								Double.parseDouble(values[7]), expiresAtMillis));
+				loaded++;
+			}
+		} catch (NumberFormatException e) {
+			throw new IOException("Malformed route cache " + file + ": " + e.getMessage(), e);
+		}
+		return loaded;
+	}
+
+	/**
+	 * Writes all routes to a temporary file first and moves it over {@code file} afterwards.
+	 *
+	 * @return number of saved routes
+	 */
+	public int save(Path file) throws IOException {
+		Path absolute = file.toAbsolutePath();
+		Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+
+		Map<Key, Entry> snapshot = routes.snapshot();
+		try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			writer.write(Double.toString(precision));
+			writer.newLine();
+			for (Map.Entry<Key, Entry> route : snapshot.entrySet()) {
+				Key key = route.getKey();
+				Entry entry = route.getValue();
+				writer.write(key.startLatitude + ";" + key.startLongitude + ";" + key.destinationLatitude + ";" + key.destinationLongitude
+						+ ";" + entry.urbanKM + ";" + entry.nonUrbanKM + ";" + entry.autobahnKM + ";" + entry.durationSeconds
+						+ ";" + entry.expiresAtMillis);
+				writer.newLine();
+			}
+		}
+
+		Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return snapshot.size();
+	}
+
+	/**
+	 * Passes every cached route to {@code visitor}, with the coordinates of the centers of its grid cells.
+	 */
+	public void forEachRoute(RouteVisitor visitor) {
+		for (Map.Entry<Key, Entry> route : routes.snapshot().entrySet()) {
+			Key key = route.getKey();
+			Entry entry = route.getValue();
+			visitor.visit(key.startLatitude * precision, key.startLongitude * precision, key.destinationLatitude * precision,
+					key.destinationLongitude * precision, entry.urbanKM, entry.nonUrbanKM, entry.autobahnKM, entry.durationSeconds);
+		}
+	}
+
+	public int size() {
+		return routes.size();
+	}
+
+	public int getMaxSize() {
+		return routes.getMaxSize();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getExpirations() {
+		return expirations.get();
+	}
+
+	public long getEvictions() {
+		return routes.getEvictions();
+	}
+
+	/**
+	 * @return number of misses that got the route requested for another miss
+	 */
+	public long getCoalesced() {
+		return requests.getCoalesced();
+	}
+
+	@Override
+	public String toString() {
+		return "RouteCache{" +
+				"size=" + size() +
+				", maxSize=" + getMaxSize() +
+				", hits=" + getHits() +
+				", misses=" + getMisses() +
+				", expirations=" + getExpirations() +
+				", evictions=" + getEvictions() +
+				", coalesced=" + getCoalesced() +
+				'}';
+	}
+
+	// start and destination in grid cells
+	private static final class Key {
+		private final long startLatitude;
+		private final long startLongitude;
+		private final long destinationLatitude;
+		private final long destinationLongitude;
+
+		private Key(long startLatitude, long startLongitude, long destinationLatitude, long destinationLongitude) {
+			this.startLatitude = startLatitude;
+			this.startLongitude = startLongitude;
+			this.destinationLatitude = destinationLatitude;
+			this.destinationLongitude = destinationLongitude;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+			Key key = (Key) o;
+			return startLatitude == key.startLatitude && startLongitude == key.startLongitude
+					&& destinationLatitude == key.destinationLatitude && destinationLongitude == key.destinationLongitude;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = Long.hashCode(startLatitude);
+			result = 31 * result + Long.hashCode(startLongitude);
+			result = 31 * result + Long.hashCode(destinationLatitude);
+			return 31 * result + Long.hashCode(destinationLongitude);
+		}
+	}
+
+	private static final class Entry {
+		private final double urbanKM;
+		private final double nonUrbanKM;
+		private final double autobahnKM;
+		private final double durationSeconds;
+		private final long expiresAtMillis;
+
+		private Entry(double urbanKM, double nonUrbanKM, double autobahnKM, double durationSeconds, long expiresAtMillis) {
+			this.urbanKM = urbanKM;
+			this.nonUrbanKM = nonUrbanKM;
+			this.autobahnKM = autobahnKM;
+			this.durationSeconds = durationSeconds;
+			this.expiresAtMillis = expiresAtMillis;
+		}
+	}
+}
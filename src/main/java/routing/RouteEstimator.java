@@ -0,0 +1,187 @@
+package routing;
+
+/**
+ * Estimates car routes without OpenRouteService: the great-circle distance between start and destination is
+ * multiplied with a detour factor and split into urban, non-urban and autobahn km by shares that depend on the
+ * distance. The duration follows from the time per km of the distance band.
+ * <p>
+ * The factors of a band are calibrated with the routes of the {@link RouteCache} as soon as it holds
+ * {@value #MIN_SAMPLES} routes of that band; until then rough defaults are used. An estimate takes well below a
+ * microsecond and is marked with {@link CarRoute#isEstimated()}.
+ */
+public class RouteEstimator {
+
+	private static final double EARTH_RADIUS_KM = 6371.0088;
+
+	// upper limits of the distance bands in great-circle km
+	private static final double[] BAND_LIMITS = {5, 20, 50, 150, Double.POSITIVE_INFINITY};
+
+	private static final double[] DEFAULT_DETOURS = {1.4, 1.3, 1.25, 1.2, 1.2};
+	private static final double[][] DEFAULT_SHARES = {
+			{0.8, 0.2, 0},
+			{0.4, 0.5, 0.1},
+			{0.2, 0.5, 0.3},
+			{0.1, 0.35, 0.55},
+			{0.05, 0.2, 0.75}};
+
+	private static final int MIN_SAMPLES = 20;
+
+	// shorter distances are dominated by the quantization of the cached coordinates
+	private static final double MIN_CALIBRATION_KM = 0.5;
+
+	private final double[] detours;
+	private final double[] urbanShares;
+	private final double[] nonUrbanShares;
+	private final double[] autobahnShares;
+	private final double[] secondsPerKM;
+	private final int samples;
+
+	private RouteEstimator(double[] detours, double[] urbanShares, double[] nonUrbanShares, double[] autobahnShares,
+						   double[] secondsPerKM, int samples) {
+		this.detours = detours;
+		this.urbanShares = urbanShares;
+		this.nonUrbanShares = nonUrbanShares;
+		this.autobahnShares = autobahnShares;
+		this.secondsPerKM = secondsPerKM;
+		this.samples = samples;
+	}
+
+	/**
+	 * @return an estimator with the default factors only
+	 */
+	public static RouteEstimator uncalibrated() {
+		return calibrate(null);
+	}
+
+	/**
+	 * @param routeCache routes to calibrate with or {@code null}
+	 */
+	public static RouteEstimator calibrate(RouteCache routeCache) {
+		int bands = BAND_LIMITS.length;
+		double[] greatCircleKM = new double[bands];
+		double[] urbanKM = new double[bands];
+		double[] nonUrbanKM = new double[bands];
+		double[] autobahnKM = new double[bands];
+		double[] seconds = new double[bands];
+		int[] counts = new int[bands];
+
+		if (routeCache != null) {
+			routeCache.forEachRoute((startLatitude, startLongitude, destinationLatitude, destinationLongitude, urban, nonUrban, autobahn, duration) -> {
+				double distance = greatCircleKM(startLatitude, startLongitude, destinationLatitude, destinationLongitude);
+				if (distance < MIN_CALIBRATION_KM || duration <= 0) return;
+
+				int band = band(distance);
+				greatCircleKM[band] += distance;
+				urbanKM[band] += urban;
+				nonUrbanKM[band] += nonUrban;
+				autobahnKM[band] += autobahn;
+				seconds[band] += duration;
+				counts[band]++;
+			});
+		}
+
+		double[] detours = new double[bands];
+		double[] urbanShares = new double[bands];
+		double[] nonUrbanShares = new double[bands];
+		double[] autobahnShares = new double[bands];
+		double[] secondsPerKM = new double[bands];
+		int samples = 0;
+
+		for (int band = 0; band < bands; band++) {
+			double routeKM = urbanKM[band] + nonUrbanKM[band] + autobahnKM[band];
+			if (counts[band] >= MIN_SAMPLES && routeKM > 0) {
+				samples += counts[band];
+				detours[band] = routeKM / greatCircleKM[band];
+				urbanShares[band] = urbanKM[band] / routeKM;
+				nonUrbanShares[band] = nonUrbanKM[band] / routeKM;
+				autobahnShares[band] = autobahnKM[band] / routeKM;
+				secondsPerKM[band] = seconds[band] / routeKM;
+			} else {
+				detours[band] = DEFAULT_DETOURS[band];
+				urbanShares[band] = DEFAULT_SHARES[band][0];
+				nonUrbanShares[band] = DEFAULT_SHARES[band][1];
+				autobahnShares[band] = DEFAULT_SHARES[band][2];
+				secondsPerKM[band] = CarRoute.estimateDurationSeconds(urbanShares[band], nonUrbanShares[band], autobahnShares[band]);
+			}
+		}
+
+		return new RouteEstimator(detours, urbanShares, nonUrbanShares, autobahnShares, secondsPerKM, samples);
+	}
+
+	public CarRoute estimate(Place start, Place destination) {
+		return estimate(start.getLatitude(), start.getLongitude(), destination.getLatitude(), destination.getLongitude());
+	}
+
+	public CarRoute estimate(double startLatitude, double startLongitude, double destinationLatitude, double destinationLongitude) {
+		double distance = greatCircleKM(startLatitude, startLongitude, destinationLatitude, destinationLongitude);
+		int band = band(distance);
+		double routeKM = distance * detours[band];
+
+		return new CarRoute(routeKM * urbanShares[band], routeKM * nonUrbanShares[band], routeKM * autobahnShares[band],
+				routeKM * secondsPerKM[band], true);
+	}
+
+	/**
+	 * Splits a route that is only known by its length and duration, e.g. from a matrix request, into road classes: the
+	 * shares of its distance band are shifted towards urban roads if the route is slower than they suggest, and
+	 * towards the autobahn if it is faster.
+	 */
+	public CarRoute split(double routeKM, double durationSeconds) {
+		int band = band(routeKM / detours[band(routeKM)]);
+		double urban = urbanShares[band];
+		double nonUrban = nonUrbanShares[band];
+		double autobahn = autobahnShares[band];
+
+		double expected = CarRoute.estimateDurationSeconds(urban, nonUrban, autobahn) * routeKM;
+		double allUrban = CarRoute.estimateDurationSeconds(1, 0, 0) * routeKM;
+		double allAutobahn = CarRoute.estimateDurationSeconds(0, 0, 1) * routeKM;
+		if (durationSeconds > expected && allUrban > expected) {
+			double shift = Math.min(1, (durationSeconds - expected) / (allUrban - expected));
+			urban += shift * (1 - urban);
+			nonUrban -= shift * nonUrban;
+			autobahn -= shift * autobahn;
+		} else if (durationSeconds < expected && expected > allAutobahn) {
+			double shift = Math.min(1, (expected - durationSeconds) / (expected - allAutobahn));
+			urban -= shift * urban;
+			nonUrban -= shift * nonUrban;
+			autobahn += shift * (1 - autobahn);
+		}
+
+		return new CarRoute(routeKM * urban, routeKM * nonUrban, routeKM * autobahn, durationSeconds);
+	}
+
+	private static int band(double greatCircleKM) {
+		int band = 0;
+		while (greatCircleKM > BAND_LIMITS[band]) band++;
+		return band;
+	}
+
+	/**
+	 * @return the great-circle distance in km (haversine formula)
+	 */
+	public static double greatCircleKM(double startLatitude, double startLongitude, double destinationLatitude, double destinationLongitude) {
+		double latitudeDelta = Math.toRadians(destinationLatitude - startLatitude);
+		double longitudeDelta = Math.toRadians(destinationLongitude - startLongitude);
+		double a = Math.sin(latitudeDelta / 2) * Math.sin(latitudeDelta / 2)
+				+ Math.cos(Math.toRadians(startLatitude)) * Math.cos(Math.toRadians(destinationLatitude))
+				* Math.sin(longitudeDelta / 2) * Math.sin(longitudeDelta / 2);
+		return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+	}
+
+	/**
+	 * @return number of cached routes the factors were calibrated with, 0 if only the defaults are used
+	 */
+	public int getSamples() {
+		return samples;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("RouteEstimator{samples=").append(samples);
+		for (int band = 0; band < BAND_LIMITS.length; band++) {
+			builder.append(String.format(", <=%s km: detour %.2f, shares %.2f/%.2f/%.2f, %.0f s/km", BAND_LIMITS[band], detours[band],
+					urbanShares[band], nonUrbanShares[band], autobahnShares[band], secondsPerKM[band]));
+		}
+		return builder.append('}').toString();
+	}
+}
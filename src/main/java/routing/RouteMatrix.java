@@ -0,0 +1,180 @@
+package routing;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import util.CO2FootprintProperties;
+import util.Futures;
+
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Routes from every origin to every destination, requested with the matrix API of OpenRouteService. The matrix is
+ * split into chunks of at most {@code MatrixMaxRoutes} routes, which are requested concurrently.
+ * <p>
+ * The matrix API returns only the length and duration of a route, so its road classes are modelled with
+ * {@link RouteEstimator#split(double, double)}. If {@code RouteEstimatorFallback} is set, the routes of a chunk that
+ * fails or misses the {@code RoutingDeadline} are estimated instead.
+ */
+public class RouteMatrix {
+
+	private static final Log log = LogFactory.getLog(RouteMatrix.class);
+
+	private final int origins;
+	private final int destinations;
+	private final double[] urbanKM;
+	private final double[] nonUrbanKM;
+	private final double[] autobahnKM;
+	private final double[] durationSeconds;
+	private final boolean[] estimated;
+	private int requests;
+
+	private RouteMatrix(int origins, int destinations) {
+		this.origins = origins;
+		this.destinations = destinations;
+		this.urbanKM = new double[origins * destinations];
+		this.nonUrbanKM = new double[origins * destinations];
+		this.autobahnKM = new double[origins * destinations];
+		this.durationSeconds = new double[origins * destinations];
+		this.estimated = new boolean[origins * destinations];
+	}
+
+	/**
+	 * @throws java.util.concurrent.TimeoutException if the requests take longer than {@code RoutingDeadline} and
+	 *                                                {@code RouteEstimatorFallback} is not set
+	 */
+	public static RouteMatrix calculate(List<Place> origins, List<Place> destinations, RouteEstimator estimator,
+										CO2FootprintProperties properties) throws Exception {
+		RouteMatrix matrix = new RouteMatrix(origins.size(), destinations.size());
+		if (origins.isEmpty() || destinations.isEmpty()) return matrix;
+
+		// as many destinations as possible per chunk, so every origin is sent as few times as possible
+		int maxRoutes = properties.getMatrixMaxRoutes();
+		int columns = Math.min(destinations.size(), maxRoutes);
+		int rows = Math.max(1, Math.min(origins.size(), maxRoutes / columns));
+
+		OpenRouteServiceAccessor ORSAccessor = new OpenRouteServiceAccessor(properties);
+		List<CompletableFuture<Void>> chunks = new ArrayList<>();
+		for (int row = 0; row < origins.size(); row += rows) {
+			for (int column = 0; column < destinations.size(); column += columns) {
+				List<Place> chunkOrigins = origins.subList(row, Math.min(origins.size(), row + rows));
+				List<Place> chunkDestinations = destinations.subList(column, Math.min(destinations.size(), column + columns));
+				int firstRow = row;
+				int firstColumn = column;
+
+				CompletableFuture<Void> chunk = Futures.within(ORSAccessor.calculateMatrixAsync(chunkOrigins, chunkDestinations).thenAccept(response -> {
+					try {
+						matrix.read(response, firstRow, firstColumn, chunkOrigins.size(), chunkDestinations.size(), estimator);
+					} catch (IOException e) {
+						throw new CompletionException(e);
+					}
+				}), properties.getRoutingDeadline(), "Matrix request");
+
+				if (properties.getRouteEstimatorFallback()) {
+					chunk = chunk.exceptionally(e -> {
+						log.warn("Matrix request failed, routes are estimated: " + e.getMessage());
+						matrix.estimate(chunkOrigins, chunkDestinations, firstRow, firstColumn, estimator);
+						return null;
+					});
+				}
+				chunks.add(chunk);
+			}
+		}
+		matrix.requests = chunks.size();
+
+		Futures.await(CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])));
+		return matrix;
+	}
+
+	// every chunk writes its own cells, unless they were estimated in the meantime
+	private void read(Response response, int firstRow, int firstColumn, int rows, int columns, RouteEstimator estimator) throws IOException {
+		if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+			response.close();
+			throw new IllegalStateException("OpenRouteService returned no matrix (HTTP status " + response.getStatus() + ")");
+		}
+
+		double[][] chunk;
+		try (InputStream inputStream = response.readEntity(InputStream.class)) {
+			chunk = OpenRouteServiceParser.readMatrix(inputStream, rows, columns);
+		} finally {
+			response.close();
+		}
+		if (chunk == null) throw new IllegalStateException("OpenRouteService returned no matrix (HTTP status " + response.getStatus() + ")");
+
+		synchronized (this) {
+			for (int row = 0; row < rows; row++) {
+				for (int column = 0; column < columns; column++) {
+					int cell = (firstRow + row) * destinations + firstColumn + column;
+					// estimated already because the chunk missed its deadline
+					if (estimated[cell]) continue;
+
+					double distance = chunk[0][row * columns + column];
+					double duration = chunk[1][row * columns + column];
+					if (Double.isNaN(distance) || Double.isNaN(duration)) {
+						durationSeconds[cell] = Double.NaN;
+						continue;
+					}
+
+					CarRoute route = estimator.split(distance / 1000, duration);
+					urbanKM[cell] = route.getUrbanKM();
+					nonUrbanKM[cell] = route.getNonUrbanKM();
+					autobahnKM[cell] = route.getAutobahnKM();
+					durationSeconds[cell] = duration;
+				}
+			}
+		}
+	}
+
+	// a chunk that timed out may still be read afterwards, so both write under the same lock
+	private synchronized void estimate(List<Place> origins, List<Place> destinations, int firstRow, int firstColumn, RouteEstimator estimator) {
+		for (int row = 0; row < origins.size(); row++) {
+			for (int column = 0; column < destinations.size(); column++) {
+				int cell = (firstRow + row) * this.destinations + firstColumn + column;
+				CarRoute route = estimator.estimate(origins.get(row), destinations.get(column));
+				urbanKM[cell] = route.getUrbanKM();
+				nonUrbanKM[cell] = route.getNonUrbanKM();
+				autobahnKM[cell] = route.getAutobahnKM();
+				durationSeconds[cell] = route.getDurationSeconds();
+				estimated[cell] = true;
+			}
+		}
+	}
+
+	/**
+	 * @return the route or {@code null} if OpenRouteService found none
+	 */
+	public synchronized CarRoute getRoute(int origin, int destination) {
+		int cell = origin * destinations + destination;
+		if (Double.isNaN(durationSeconds[cell])) return null;
+		return new CarRoute(urbanKM[cell], nonUrbanKM[cell], autobahnKM[cell], durationSeconds[cell], estimated[cell]);
+	}
+
+	/**
+	 * @return number of routes that were estimated because their matrix request failed
+	 */
+	public synchronized int getEstimated() {
+		int count = 0;
+		for (boolean cell : estimated) if (cell) count++;
+		return count;
+	}
+
+	public int getOrigins() {
+		return origins;
+	}
+
+	public int getDestinations() {
+		return destinations;
+	}
+
+	/**
+	 * @return number of requests sent to OpenRouteService
+	 */
+	public int getRequests() {
+		return requests;
+	}
+}
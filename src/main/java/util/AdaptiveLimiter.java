@@ -0,0 +1,117 @@
+package util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of concurrent calls to an external service with AIMD (additive increase, multiplicative
+ * decrease): every call that is answered within the latency target raises the limit by {@code 1/limit}, i.e. by about
+ * one per round of calls, a slow or failed call multiplies it by {@value #BACKOFF}. Like TCP, the limit is lowered at most
+ * once per round: calls that were started before the last decrease don't lower it again. When the service slows down,
+ * fewer threads wait for it and the others are rejected at once instead of queueing up.
+ */
+public class AdaptiveLimiter {
+
+	private static final double BACKOFF = 0.75;
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final long latencyTarget;
+
+	private double limit;
+	private int inFlight;
+	private long lastDecrease = System.nanoTime();
+
+	private long accepted;
+	private long rejected;
+	private long decreases;
+
+	/**
+	 * @param latencyTarget latency in milliseconds above which a call counts as slow
+	 */
+	public AdaptiveLimiter(int minLimit, int maxLimit, long latencyTarget) {
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.latencyTarget = latencyTarget;
+		this.limit = maxLimit;
+	}
+
+	/**
+	 * @return {@code false} if the limit is reached, otherwise the call has to be finished with
+	 * {@link #release(long, boolean)} or {@link #cancel()}
+	 */
+	public synchronized boolean tryAcquire() {
+		if (inFlight >= (int) limit) {
+			rejected++;
+			return false;
+		}
+		inFlight++;
+		accepted++;
+		return true;
+	}
+
+	/**
+	 * @param start  {@link System#nanoTime()} when the call was started
+	 * @param failed {@code true} if the call failed or timed out
+	 */
+	public synchronized void release(long start, boolean failed) {
+		long now = System.nanoTime();
+		// only grow while the limit is actually used, an idle service says nothing about its capacity
+		boolean saturated = inFlight * 2 >= limit;
+		inFlight--;
+
+		if (failed || TimeUnit.NANOSECONDS.toMillis(now - start) > latencyTarget) {
+			if (start - lastDecrease > 0) {
+				limit = Math.max(minLimit, limit * BACKOFF);
+				lastDecrease = now;
+				decreases++;
+			}
+		} else if (saturated) {
+			limit = Math.min(maxLimit, limit + 1 / limit);
+		}
+	}
+
+	/**
+	 * Releases a call that was never sent, without adapting the limit.
+	 */
+	public synchronized void cancel() {
+		inFlight--;
+		accepted--;
+	}
+
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	public synchronized long getAccepted() {
+		return accepted;
+	}
+
+	public synchronized long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * @return number of times slow or failed calls lowered the limit
+	 */
+	public synchronized long getDecreases() {
+		return decreases;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "AdaptiveLimiter{" +
+				"limit=" + getLimit() +
+				", inFlight=" + inFlight +
+				", accepted=" + accepted +
+				", rejected=" + rejected +
+				'}';
+	}
+}
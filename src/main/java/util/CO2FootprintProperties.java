@@ -13,9 +13,95 @@ public class CO2FootprintProperties {
 	// API-Keys
 	private final String OpenRouteServiceAPIKey;
 
+	// Base url of OpenRouteService, e.g. of a self-hosted instance
+	private final String OpenRouteServiceBaseUrl;
+
+	// Connect and read timeouts in milliseconds of the shared HTTP clients, and idle keep-alive connections per host
+	private final Integer OpenRouteServiceConnectTimeout;
+	private final Integer OpenRouteServiceReadTimeout;
+	private final Integer CarDatabaseConnectTimeout;
+	private final Integer CarDatabaseReadTimeout;
+	private final Integer HttpMaxConnections;
+
+	// Adaptive limit of concurrent requests to OpenRouteService (maximum and latency in milliseconds above which it is
+	// lowered), and circuit breaker (consecutive failures that open it and milliseconds until it lets a probe through)
+	private final Integer OpenRouteServiceConcurrencyLimit;
+	private final Long OpenRouteServiceLatencyTarget;
+	private final Integer OpenRouteServiceCircuitBreakerFailures;
+	private final Long OpenRouteServiceCircuitBreakerOpenTime;
+
 	// How many rows of the car database shall be downloaded? Set it to "-1" for all rows
 	private final Integer CarDatabaseRows;
 
+	// Where the car database is downloaded from and where the state of the last import is kept
+	private final String CarDatabaseExportUrl;
+	private final String CarDatabaseStateFile;
+
+	// Maximum share of changed rows that is still applied incrementally instead of importing the whole database
+	private final Double CarDatabaseMaxIncrementalRatio;
+
+	// How many rows are inserted per JDBC batch and after how many batches the import is committed
+	private final Integer CarDatabaseBatchSize;
+	private final Integer CarDatabaseCommitInterval;
+
+	// Number of parallel insert threads (each uses one pooled connection) and capacity of the queues between the stages
+	private final Integer CarDatabaseWriterThreads;
+	private final Integer CarDatabaseQueueCapacity;
+
+	// Minimum share of the current number of cars a new import must reach before it replaces the live table
+	private final Double CarDatabaseMinRowRatio;
+
+	// Where the cached car database is stored: "mysql" or "embedded" (a local file, no database server needed)
+	private final String CarRepositoryBackend;
+	private final String CarRepositoryFile;
+
+	// Binary snapshot of the car catalog that is served right after a restart
+	private final String CarCatalogSnapshotFile;
+
+	// How many cars (and unknown car ids) are cached for the calculations
+	private final Integer CarResolverCacheSize;
+
+	// Maximum number of rows of one batch calculation and of cars of one ranking
+	private final Integer CalculationBatchMaxRows;
+	private final Integer RankingMaxResults;
+
+	// File with the emission factors, empty for the bundled ones. Changes of the file are applied while running
+	private final String EmissionFactorsFile;
+
+	// Monte Carlo uncertainty bands: samples per estimate, seed, real-world/database consumption and local bus share
+	// as triangular distributions "<min>;<mode>;<max>", and the maximum share of km that belongs to a neighbouring road class
+	private final Integer UncertaintySamples;
+	private final Long UncertaintySeed;
+	private final String UncertaintyConsumptionFactor;
+	private final Double UncertaintyRoadClassShift;
+	private final String UncertaintyLocalBusShare;
+
+	// Directory with hourly carbon intensity series of the electricity mixes (<mix>.csv), empty for the static factors
+	private final String CarbonIntensityDirectory;
+
+	// Routes of OpenRouteService cached by start and destination snapped to a grid of RouteCachePrecision degrees:
+	// maximum number of routes, lifetime in milliseconds and file the routes are kept in across restarts (empty for none)
+	private final Integer RouteCacheSize;
+	private final Double RouteCachePrecision;
+	private final Long RouteCacheTtl;
+	private final String RouteCacheFile;
+
+	// Results of place searches cached by normalized query: maximum number of queries and lifetime in milliseconds
+	private final Integer GeocodeCacheSize;
+	private final Long GeocodeCacheTtl;
+
+	// Deadlines in milliseconds of the route request and of the car lookup of coordinate-based calculations, which run
+	// concurrently, and number of threads for car lookups in the database
+	private final Long RoutingDeadline;
+	private final Long CarLookupDeadline;
+	private final Integer CarLookupThreads;
+
+	// Estimate the route from the distance between start and destination if OpenRouteService fails or is too slow
+	private final Boolean RouteEstimatorFallback;
+
+	// Maximum number of routes (origins x destinations) per matrix request to OpenRouteService
+	private final Integer MatrixMaxRoutes;
+
 	// MySQL Cache Database
 	private final String CacheDatabaseHost;
 	private final String CacheDatabasePort;
@@ -25,6 +111,13 @@ public class CO2FootprintProperties {
 	private final String CacheDatabasePassword;
 	private final String CacheDatabaseUseSSL;
 
+	// MySQL Connection Pool
+	private final Integer CacheDatabasePoolMinSize;
+	private final Integer CacheDatabasePoolMaxSize;
+	private final Long CacheDatabasePoolAcquireTimeout;
+	private final Integer CacheDatabasePoolValidationTimeout;
+	private final Long CacheDatabasePoolLeakDetectionThreshold;
+
 	public CO2FootprintProperties() throws MissingRequiredPropertiesException, IOException {
 		Properties properties = new Properties();
 		String configFileName = "config.properties";
@@ -32,7 +125,51 @@ public class CO2FootprintProperties {
 		properties.load(Objects.requireNonNull(inputStream));
 
 		OpenRouteServiceAPIKey = properties.getProperty("OpenRouteServiceAPIKey");
+		OpenRouteServiceBaseUrl = properties.getProperty("OpenRouteServiceBaseUrl", "https://api.openrouteservice.org");
+		OpenRouteServiceConnectTimeout = Integer.valueOf(properties.getProperty("OpenRouteServiceConnectTimeout", "5000"));
+		OpenRouteServiceReadTimeout = Integer.valueOf(properties.getProperty("OpenRouteServiceReadTimeout", "10000"));
+		CarDatabaseConnectTimeout = Integer.valueOf(properties.getProperty("CarDatabaseConnectTimeout", "10000"));
+		CarDatabaseReadTimeout = Integer.valueOf(properties.getProperty("CarDatabaseReadTimeout", "60000"));
+		HttpMaxConnections = Integer.valueOf(properties.getProperty("HttpMaxConnections", "20"));
+		OpenRouteServiceConcurrencyLimit = Integer.valueOf(properties.getProperty("OpenRouteServiceConcurrencyLimit", "20"));
+		OpenRouteServiceLatencyTarget = Long.valueOf(properties.getProperty("OpenRouteServiceLatencyTarget", "2000"));
+		OpenRouteServiceCircuitBreakerFailures = Integer.valueOf(properties.getProperty("OpenRouteServiceCircuitBreakerFailures", "5"));
+		OpenRouteServiceCircuitBreakerOpenTime = Long.valueOf(properties.getProperty("OpenRouteServiceCircuitBreakerOpenTime", "30000"));
 		CarDatabaseRows = Integer.valueOf(properties.getProperty("CarDatabaseRows", "-1"));
+		CarDatabaseExportUrl = properties.getProperty("CarDatabaseExportUrl",
+				"https://data.opendatasoft.com/api/v2/catalog/datasets/vehicules-commercialises%40public/exports/csv");
+		CarDatabaseStateFile = properties.getProperty("CarDatabaseStateFile", "car-database.state");
+		CarDatabaseMaxIncrementalRatio = Double.valueOf(properties.getProperty("CarDatabaseMaxIncrementalRatio", "0.25"));
+		CarDatabaseBatchSize = Integer.valueOf(properties.getProperty("CarDatabaseBatchSize", "1000"));
+		CarDatabaseCommitInterval = Integer.valueOf(properties.getProperty("CarDatabaseCommitInterval", "10"));
+		CarDatabaseWriterThreads = Integer.valueOf(properties.getProperty("CarDatabaseWriterThreads",
+				String.valueOf(Runtime.getRuntime().availableProcessors())));
+		CarDatabaseQueueCapacity = Integer.valueOf(properties.getProperty("CarDatabaseQueueCapacity", "16"));
+		CarDatabaseMinRowRatio = Double.valueOf(properties.getProperty("CarDatabaseMinRowRatio", "0.5"));
+		CarRepositoryBackend = properties.getProperty("CarRepositoryBackend", "mysql");
+		CarRepositoryFile = properties.getProperty("CarRepositoryFile", "car-database.csv");
+		CarCatalogSnapshotFile = properties.getProperty("CarCatalogSnapshotFile", "car-catalog.snapshot");
+		CarResolverCacheSize = Integer.valueOf(properties.getProperty("CarResolverCacheSize", "1000"));
+		CalculationBatchMaxRows = Integer.valueOf(properties.getProperty("CalculationBatchMaxRows", "100000"));
+		RankingMaxResults = Integer.valueOf(properties.getProperty("RankingMaxResults", "100"));
+		EmissionFactorsFile = properties.getProperty("EmissionFactorsFile", "");
+		CarbonIntensityDirectory = properties.getProperty("CarbonIntensityDirectory", "");
+		RouteCacheSize = Integer.valueOf(properties.getProperty("RouteCacheSize", "10000"));
+		RouteCachePrecision = Double.valueOf(properties.getProperty("RouteCachePrecision", "0.001"));
+		RouteCacheTtl = Long.valueOf(properties.getProperty("RouteCacheTtl", "604800000"));
+		RouteCacheFile = properties.getProperty("RouteCacheFile", "route-cache.csv");
+		GeocodeCacheSize = Integer.valueOf(properties.getProperty("GeocodeCacheSize", "10000"));
+		GeocodeCacheTtl = Long.valueOf(properties.getProperty("GeocodeCacheTtl", "86400000"));
+		RoutingDeadline = Long.valueOf(properties.getProperty("RoutingDeadline", "8000"));
+		CarLookupDeadline = Long.valueOf(properties.getProperty("CarLookupDeadline", "2000"));
+		CarLookupThreads = Integer.valueOf(properties.getProperty("CarLookupThreads", "8"));
+		RouteEstimatorFallback = Boolean.valueOf(properties.getProperty("RouteEstimatorFallback", "true"));
+		MatrixMaxRoutes = Integer.valueOf(properties.getProperty("MatrixMaxRoutes", "3500"));
+		UncertaintySamples = Integer.valueOf(properties.getProperty("UncertaintySamples", "10000"));
+		UncertaintySeed = Long.valueOf(properties.getProperty("UncertaintySeed", "42"));
+		UncertaintyConsumptionFactor = properties.getProperty("UncertaintyConsumptionFactor", "1.0;1.2;1.45");
+		UncertaintyRoadClassShift = Double.valueOf(properties.getProperty("UncertaintyRoadClassShift", "0.15"));
+		UncertaintyLocalBusShare = properties.getProperty("UncertaintyLocalBusShare", "0.3;0.5;0.7");
 		CacheDatabaseHost = properties.getProperty("CacheDatabaseHost");
 		CacheDatabasePort = properties.getProperty("CacheDatabasePort");
 		CacheDatabaseName = properties.getProperty("CacheDatabaseName");
@@ -40,25 +177,267 @@ public class CO2FootprintProperties {
 		CacheDatabaseUser = properties.getProperty("CacheDatabaseUser");
 		CacheDatabasePassword = properties.getProperty("CacheDatabasePassword");
 		CacheDatabaseUseSSL = properties.getProperty("CacheDatabaseUseSSL");
+		CacheDatabasePoolMinSize = Integer.valueOf(properties.getProperty("CacheDatabasePoolMinSize", "2"));
+		CacheDatabasePoolMaxSize = Integer.valueOf(properties.getProperty("CacheDatabasePoolMaxSize", "10"));
+		CacheDatabasePoolAcquireTimeout = Long.valueOf(properties.getProperty("CacheDatabasePoolAcquireTimeout", "5000"));
+		CacheDatabasePoolValidationTimeout = Integer.valueOf(properties.getProperty("CacheDatabasePoolValidationTimeout", "2"));
+		CacheDatabasePoolLeakDetectionThreshold = Long.valueOf(properties.getProperty("CacheDatabasePoolLeakDetectionThreshold", "60000"));
+
+		if (!CarRepositoryBackend.equals("mysql") && !CarRepositoryBackend.equals("embedded")) {
+			throw new InvalidPropertiesFormatException("CarRepositoryBackend must be \"mysql\" or \"embedded\"");
+		}
 
 		if (!allVariablesSet()) {
 			throw new InvalidPropertiesFormatException("One or more properties are missing. Check config.properties");
 		}
+
+		if (CarDatabaseBatchSize < 1 || CarDatabaseCommitInterval < 1 || CarDatabaseWriterThreads < 1 || CarDatabaseQueueCapacity < 1) {
+			throw new InvalidPropertiesFormatException("CarDatabaseBatchSize, CarDatabaseCommitInterval, CarDatabaseWriterThreads and CarDatabaseQueueCapacity must be >= 1");
+		}
+
+		if (OpenRouteServiceConnectTimeout < 0 || OpenRouteServiceReadTimeout < 0 || CarDatabaseConnectTimeout < 0 || CarDatabaseReadTimeout < 0) {
+			throw new InvalidPropertiesFormatException("OpenRouteServiceConnectTimeout, OpenRouteServiceReadTimeout, CarDatabaseConnectTimeout and CarDatabaseReadTimeout must be >= 0");
+		}
+
+		if (HttpMaxConnections < 1) {
+			throw new InvalidPropertiesFormatException("HttpMaxConnections must be >= 1");
+		}
+
+		if (OpenRouteServiceConcurrencyLimit < 1 || OpenRouteServiceLatencyTarget < 1 || OpenRouteServiceCircuitBreakerFailures < 1
+				|| OpenRouteServiceCircuitBreakerOpenTime < 0) {
+			throw new InvalidPropertiesFormatException("OpenRouteServiceConcurrencyLimit, OpenRouteServiceLatencyTarget and "
+					+ "OpenRouteServiceCircuitBreakerFailures must be >= 1, OpenRouteServiceCircuitBreakerOpenTime must be >= 0");
+		}
+
+		if (CarResolverCacheSize < 0) {
+			throw new InvalidPropertiesFormatException("CarResolverCacheSize must be >= 0");
+		}
+
+		if (CalculationBatchMaxRows < 1) {
+			throw new InvalidPropertiesFormatException("CalculationBatchMaxRows must be >= 1");
+		}
+
+		if (RankingMaxResults < 1) {
+			throw new InvalidPropertiesFormatException("RankingMaxResults must be >= 1");
+		}
+
+		if (UncertaintySamples < 1) {
+			throw new InvalidPropertiesFormatException("UncertaintySamples must be >= 1");
+		}
+
+		if (UncertaintyRoadClassShift < 0 || UncertaintyRoadClassShift > 1) {
+			throw new InvalidPropertiesFormatException("UncertaintyRoadClassShift must be between 0 and 1");
+		}
+
+		if (RouteCacheSize < 0 || RouteCacheTtl < 0) {
+			throw new InvalidPropertiesFormatException("RouteCacheSize and RouteCacheTtl must be >= 0");
+		}
+
+		if (!(RouteCachePrecision > 0)) {
+			throw new InvalidPropertiesFormatException("RouteCachePrecision must be > 0");
+		}
+
+		if (GeocodeCacheSize < 0 || GeocodeCacheTtl < 0) {
+			throw new InvalidPropertiesFormatException("GeocodeCacheSize and GeocodeCacheTtl must be >= 0");
+		}
+
+		if (RoutingDeadline < 1 || CarLookupDeadline < 1 || CarLookupThreads < 1) {
+			throw new InvalidPropertiesFormatException("RoutingDeadline, CarLookupDeadline and CarLookupThreads must be >= 1");
+		}
+
+		if (MatrixMaxRoutes < 1) {
+			throw new InvalidPropertiesFormatException("MatrixMaxRoutes must be >= 1");
+		}
+
+		if (CacheDatabasePoolMinSize < 0 || CacheDatabasePoolMaxSize < 1 || CacheDatabasePoolMinSize > CacheDatabasePoolMaxSize) {
+			throw new InvalidPropertiesFormatException("CacheDatabasePoolMinSize must be between 0 and CacheDatabasePoolMaxSize (>= 1)");
+		}
 	}
 
 	private boolean allVariablesSet() {
-		return OpenRouteServiceAPIKey != null && CarDatabaseRows != null && CacheDatabaseHost != null && CacheDatabasePort != null
-				&& CacheDatabaseName != null && CacheDatabaseUser != null && CacheDatabasePassword != null && CacheDatabaseUseSSL != null;
+		if (OpenRouteServiceAPIKey == null || CarDatabaseRows == null) return false;
+
+		// the embedded repository doesn't need a database server
+		return !CarRepositoryBackend.equals("mysql") || (CacheDatabaseHost != null && CacheDatabasePort != null
+				&& CacheDatabaseName != null && CacheDatabaseUser != null && CacheDatabasePassword != null && CacheDatabaseUseSSL != null);
 	}
 
 	public String getOpenRouteServiceAPIKey() {
 		return OpenRouteServiceAPIKey;
 	}
 
+	public String getOpenRouteServiceBaseUrl() {
+		return OpenRouteServiceBaseUrl;
+	}
+
+	public Integer getOpenRouteServiceConnectTimeout() {
+		return OpenRouteServiceConnectTimeout;
+	}
+
+	public Integer getOpenRouteServiceReadTimeout() {
+		return OpenRouteServiceReadTimeout;
+	}
+
+	public Integer getCarDatabaseConnectTimeout() {
+		return CarDatabaseConnectTimeout;
+	}
+
+	public Integer getCarDatabaseReadTimeout() {
+		return CarDatabaseReadTimeout;
+	}
+
+	public Integer getHttpMaxConnections() {
+		return HttpMaxConnections;
+	}
+
+	public Integer getOpenRouteServiceConcurrencyLimit() {
+		return OpenRouteServiceConcurrencyLimit;
+	}
+
+	public Long getOpenRouteServiceLatencyTarget() {
+		return OpenRouteServiceLatencyTarget;
+	}
+
+	public Integer getOpenRouteServiceCircuitBreakerFailures() {
+		return OpenRouteServiceCircuitBreakerFailures;
+	}
+
+	public Long getOpenRouteServiceCircuitBreakerOpenTime() {
+		return OpenRouteServiceCircuitBreakerOpenTime;
+	}
+
 	public Integer getCarDatabaseRows() {
 		return CarDatabaseRows;
 	}
 
+	public String getCarDatabaseExportUrl() {
+		return CarDatabaseExportUrl;
+	}
+
+	public String getCarDatabaseStateFile() {
+		return CarDatabaseStateFile;
+	}
+
+	public Double getCarDatabaseMaxIncrementalRatio() {
+		return CarDatabaseMaxIncrementalRatio;
+	}
+
+	public Integer getCarDatabaseBatchSize() {
+		return CarDatabaseBatchSize;
+	}
+
+	public Integer getCarDatabaseCommitInterval() {
+		return CarDatabaseCommitInterval;
+	}
+
+	public Integer getCarDatabaseWriterThreads() {
+		return CarDatabaseWriterThreads;
+	}
+
+	public Integer getCarDatabaseQueueCapacity() {
+		return CarDatabaseQueueCapacity;
+	}
+
+	public Double getCarDatabaseMinRowRatio() {
+		return CarDatabaseMinRowRatio;
+	}
+
+	public String getCarRepositoryBackend() {
+		return CarRepositoryBackend;
+	}
+
+	public String getCarRepositoryFile() {
+		return CarRepositoryFile;
+	}
+
+	public String getCarCatalogSnapshotFile() {
+		return CarCatalogSnapshotFile;
+	}
+
+	public Integer getCarResolverCacheSize() {
+		return CarResolverCacheSize;
+	}
+
+	public Integer getCalculationBatchMaxRows() {
+		return CalculationBatchMaxRows;
+	}
+
+	public Integer getRankingMaxResults() {
+		return RankingMaxResults;
+	}
+
+	public String getEmissionFactorsFile() {
+		return EmissionFactorsFile;
+	}
+
+	public String getCarbonIntensityDirectory() {
+		return CarbonIntensityDirectory;
+	}
+
+	public Integer getRouteCacheSize() {
+		return RouteCacheSize;
+	}
+
+	public Double getRouteCachePrecision() {
+		return RouteCachePrecision;
+	}
+
+	public Long getRouteCacheTtl() {
+		return RouteCacheTtl;
+	}
+
+	public String getRouteCacheFile() {
+		return RouteCacheFile;
+	}
+
+	public Integer getGeocodeCacheSize() {
+		return GeocodeCacheSize;
+	}
+
+	public Long getGeocodeCacheTtl() {
+		return GeocodeCacheTtl;
+	}
+
+	public Long getRoutingDeadline() {
+		return RoutingDeadline;
+	}
+
+	public Long getCarLookupDeadline() {
+		return CarLookupDeadline;
+	}
+
+	public Integer getCarLookupThreads() {
+		return CarLookupThreads;
+	}
+
+	public Boolean getRouteEstimatorFallback() {
+		return RouteEstimatorFallback;
+	}
+
+	public Integer getMatrixMaxRoutes() {
+		return MatrixMaxRoutes;
+	}
+
+	public Integer getUncertaintySamples() {
+		return UncertaintySamples;
+	}
+
+	public Long getUncertaintySeed() {
+		return UncertaintySeed;
+	}
+
+	public String getUncertaintyConsumptionFactor() {
+		return UncertaintyConsumptionFactor;
+	}
+
+	public Double getUncertaintyRoadClassShift() {
+		return UncertaintyRoadClassShift;
+	}
+
+	public String getUncertaintyLocalBusShare() {
+		return UncertaintyLocalBusShare;
+	}
+
 	public String getCacheDatabaseHost() {
 		return CacheDatabaseHost;
 	}
@@ -86,4 +465,24 @@ public class CO2FootprintProperties {
 	public String getCacheDatabaseTableName() {
 		return CacheDatabaseTableName;
 	}
+
+	public Integer getCacheDatabasePoolMinSize() {
+		return CacheDatabasePoolMinSize;
+	}
+
+	public Integer getCacheDatabasePoolMaxSize() {
+		return CacheDatabasePoolMaxSize;
+	}
+
+	public Long getCacheDatabasePoolAcquireTimeout() {
+		return CacheDatabasePoolAcquireTimeout;
+	}
+
+	public Integer getCacheDatabasePoolValidationTimeout() {
+		return CacheDatabasePoolValidationTimeout;
+	}
+
+	public Long getCacheDatabasePoolLeakDetectionThreshold() {
+		return CacheDatabasePoolLeakDetectionThreshold;
+	}
 }
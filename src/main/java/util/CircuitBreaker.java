@@ -0,0 +1,112 @@
+package util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops calling an external service after {@code failureThreshold} consecutive failures. While the circuit is open,
+ * calls are rejected at once; after {@code openTime} milliseconds a single probe call is let through, which closes the
+ * circuit again if it succeeds. Calls that were started before the circuit opened don't change it while it is open or
+ * half open, only the probe decides.
+ */
+public class CircuitBreaker {
+
+	public enum State {CLOSED, OPEN, HALF_OPEN}
+
+	private final int failureThreshold;
+	private final long openTime;
+
+	private State state = State.CLOSED;
+	private int failures;
+	// System.nanoTime() when the circuit was opened or became half open
+	private long stateSince;
+	private boolean probing;
+
+	private long trips;
+	private long rejected;
+
+	public CircuitBreaker(int failureThreshold, long openTime) {
+		this.failureThreshold = failureThreshold;
+		this.openTime = openTime;
+	}
+
+	/**
+	 * @return {@code false} if the call must not be made, otherwise its outcome has to be recorded with
+	 * {@link #onSuccess(long)} or {@link #onFailure(long)}
+	 */
+	public synchronized boolean allow() {
+		long now = System.nanoTime();
+		if (state == State.OPEN && now - stateSince >= TimeUnit.MILLISECONDS.toNanos(openTime)) {
+			state = State.HALF_OPEN;
+			stateSince = now;
+			probing = false;
+		}
+
+		if (state == State.CLOSED) return true;
+		if (state == State.HALF_OPEN && !probing) {
+			probing = true;
+			return true;
+		}
+		rejected++;
+		return false;
+	}
+
+	/**
+	 * @param start {@link System#nanoTime()} when the call was started
+	 */
+	public synchronized void onSuccess(long start) {
+		if (state == State.CLOSED) {
+			failures = 0;
+		} else if (isProbe(start)) {
+			failures = 0;
+			probing = false;
+			state = State.CLOSED;
+		}
+	}
+
+	/**
+	 * @param start {@link System#nanoTime()} when the call was started
+	 */
+	public synchronized void onFailure(long start) {
+		if (state == State.CLOSED) {
+			if (++failures >= failureThreshold) open();
+		} else if (isProbe(start)) {
+			probing = false;
+			open();
+		}
+	}
+
+	// while half open, only the probe was started after the state changed
+	private boolean isProbe(long start) {
+		return state == State.HALF_OPEN && start - stateSince >= 0;
+	}
+
+	private void open() {
+		state = State.OPEN;
+		stateSince = System.nanoTime();
+		trips++;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * @return number of times the circuit was opened
+	 */
+	public synchronized long getTrips() {
+		return trips;
+	}
+
+	public synchronized long getRejected() {
+		return rejected;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "CircuitBreaker{" +
+				"state=" + state +
+				", trips=" + trips +
+				", rejected=" + rejected +
+				'}';
+	}
+}
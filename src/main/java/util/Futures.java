@@ -0,0 +1,58 @@
+package util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Deadlines for the stages of asynchronous calculations (Java 8 has no {@code CompletableFuture.orTimeout}).
+ */
+public final class Futures {
+
+	private static final ScheduledExecutorService DEADLINES = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "Futures-deadlines");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private Futures() {
+	}
+
+	/**
+	 * @param stage name of the stage for the {@link TimeoutException}
+	 * @return a future that completes like {@code future}, or with a {@link TimeoutException} after {@code millis}
+	 */
+	public static <T> CompletableFuture<T> within(CompletableFuture<T> future, long millis, String stage) {
+		if (future.isDone()) return future;
+
+		CompletableFuture<T> result = new CompletableFuture<>();
+		ScheduledFuture<?> timeout = DEADLINES.schedule(
+				() -> result.completeExceptionally(new TimeoutException(stage + " took longer than " + millis + "ms")),
+				millis, TimeUnit.MILLISECONDS);
+		future.whenComplete((value, e) -> {
+			timeout.cancel(false);
+			if (e == null) result.complete(value);
+			else result.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+		});
+		return result;
+	}
+
+	/**
+	 * Waits for the result, throwing the exception the future failed with instead of a wrapping one.
+	 */
+	public static <T> T await(CompletableFuture<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof CompletionException && cause.getCause() != null) cause = cause.getCause();
+			if (cause instanceof Exception) throw (Exception) cause;
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe, size-bounded cache that evicts the least recently used entry. A hit doesn't allocate.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the cached values
+ */
+public class LruCache<K, V> {
+
+	private final int maxSize;
+	private final LinkedHashMap<K, V> entries;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	public LruCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				if (size() <= LruCache.this.maxSize) return false;
+
+				evictions++;
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @return the cached value or {@code null} if the key is not cached
+	 */
+	public synchronized V get(K key) {
+		V value = entries.get(key);
+		if (value == null) misses++;
+		else hits++;
+		return value;
+	}
+
+	public synchronized void put(K key, V value) {
+		entries.put(key, value);
+	}
+
+	public synchronized void remove(K key) {
+		entries.remove(key);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return a copy of the entries, the least recently used first
+	 */
+	public synchronized Map<K, V> snapshot() {
+		return new LinkedHashMap<>(entries);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "LruCache{" +
+				"size=" + entries.size() +
+				", maxSize=" + maxSize +
+				", hits=" + hits +
+				", misses=" + misses +
+				", evictions=" + evictions +
+				'}';
+	}
+}
@@ -0,0 +1,164 @@
+package util;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * One JAX-RS client per external service, shared by all beans of an agent. Building a client is expensive, and only a
+ * client that is kept alive can reuse the connections (and TLS sessions) of earlier requests.
+ * <p>
+ * The connections are pooled by the keep-alive cache of the JDK, which keeps up to {@code HttpMaxConnections} idle
+ * connections per host. A connection is only returned to the pool once its response was read completely or closed.
+ * <p>
+ * Calls made with {@link #send(Supplier)} or {@link #sendAsync(Supplier)} pass an {@link AdaptiveLimiter} and a
+ * {@link CircuitBreaker}, if the service has them: a slow or failing service is not waited for by more and more
+ * threads, the calls are rejected with a {@link RejectedExecutionException} instead.
+ */
+public class RestClient implements AutoCloseable {
+
+	public static final SharedResource<RestClient> OPEN_ROUTE_SERVICE = new SharedResource<>(properties ->
+			new RestClient("OpenRouteService", properties.getOpenRouteServiceConnectTimeout(), properties.getOpenRouteServiceReadTimeout(),
+					new AdaptiveLimiter(1, properties.getOpenRouteServiceConcurrencyLimit(), properties.getOpenRouteServiceLatencyTarget()),
+					new CircuitBreaker(properties.getOpenRouteServiceCircuitBreakerFailures(), properties.getOpenRouteServiceCircuitBreakerOpenTime()),
+					properties));
+
+	public static final SharedResource<RestClient> CAR_DATABASE = new SharedResource<>(properties ->
+			new RestClient("car database", properties.getCarDatabaseConnectTimeout(), properties.getCarDatabaseReadTimeout(), null, null, properties));
+
+	private final String service;
+	private final Client client;
+	private final AdaptiveLimiter limiter;
+	private final CircuitBreaker circuitBreaker;
+
+	private RestClient(String service, int connectTimeout, int readTimeout, AdaptiveLimiter limiter, CircuitBreaker circuitBreaker,
+					   CO2FootprintProperties properties) {
+		// read by the JDK when the first connection is opened, an explicit system property wins
+		if (System.getProperty("http.maxConnections") == null) {
+			System.setProperty("http.maxConnections", String.valueOf(properties.getHttpMaxConnections()));
+		}
+
+		Thread.currentThread().setContextClassLoader(getClass().getClassLoader());
+		this.service = service;
+		this.limiter = limiter;
+		this.circuitBreaker = circuitBreaker;
+		this.client = ClientBuilder.newBuilder()
+				.connectTimeout(connectTimeout, TimeUnit.MILLISECONDS)
+				.readTimeout(readTimeout, TimeUnit.MILLISECONDS)
+				.build();
+	}
+
+	/**
+	 * @return the client of the service
+	 * @throws IllegalStateException if no bean has acquired the client
+	 */
+	public static RestClient of(SharedResource<RestClient> shared) {
+		RestClient restClient = shared.get();
+		if (restClient == null) throw new IllegalStateException("No REST client acquired for this service");
+		return restClient;
+	}
+
+	public WebTarget target(String url) {
+		Thread.currentThread().setContextClassLoader(getClass().getClassLoader());
+		return client.target(url);
+	}
+
+	/**
+	 * Sends a request on the calling thread.
+	 *
+	 * @throws RejectedExecutionException if the concurrency limit is reached or the circuit is open
+	 */
+	public Response send(Supplier<Response> request) {
+		long start = admit();
+		Response response;
+		try {
+			response = request.get();
+		} catch (RuntimeException | Error e) {
+			complete(start, true);
+			throw e;
+		}
+		complete(start, failed(response));
+		return response;
+	}
+
+	/**
+	 * Same as {@link #send(Supplier)}, but a rejected request completes the future exceptionally.
+	 */
+	public CompletableFuture<Response> sendAsync(Supplier<CompletionStage<Response>> request) {
+		long start;
+		CompletableFuture<Response> response;
+		try {
+			start = admit();
+		} catch (RejectedExecutionException e) {
+			response = new CompletableFuture<>();
+			response.completeExceptionally(e);
+			return response;
+		}
+
+		try {
+			response = request.get().toCompletableFuture();
+		} catch (RuntimeException | Error e) {
+			complete(start, true);
+			throw e;
+		}
+		return response.whenComplete((value, e) -> complete(start, e != null || failed(value)));
+	}
+
+	// returns the start of the call in nanoseconds
+	private long admit() {
+		if (limiter != null && !limiter.tryAcquire()) {
+			throw new RejectedExecutionException(service + " concurrency limit of " + limiter.getLimit() + " reached");
+		}
+		if (circuitBreaker != null && !circuitBreaker.allow()) {
+			if (limiter != null) limiter.cancel();
+			throw new RejectedExecutionException("Circuit breaker of " + service + " is open");
+		}
+		// taken after allow(), so a probe is recognized as started after the circuit became half open
+		return System.nanoTime();
+	}
+
+	private void complete(long start, boolean failed) {
+		if (limiter != null) limiter.release(start, failed);
+		if (circuitBreaker != null) {
+			if (failed) circuitBreaker.onFailure(start);
+			else circuitBreaker.onSuccess(start);
+		}
+	}
+
+	// overload and server errors, a client error like an unroutable request says nothing about the health of the service
+	private static boolean failed(Response response) {
+		return response.getStatus() >= 500 || response.getStatus() == 429;
+	}
+
+	/**
+	 * @return the limiter or {@code null} if the calls to the service are not limited
+	 */
+	public AdaptiveLimiter getLimiter() {
+		return limiter;
+	}
+
+	/**
+	 * @return the circuit breaker or {@code null} if the service has none
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	@Override
+	public void close() {
+		client.close();
+	}
+
+	@Override
+	public String toString() {
+		return "RestClient{" +
+				"service=" + service +
+				'}';
+	}
+}
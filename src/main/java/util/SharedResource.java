@@ -0,0 +1,49 @@
+package util;
+
+/**
+ * Reference counted holder for resources that are shared by all beans of an agent (e.g. connection pools).
+ * <p>
+ * Every bean calls {@link #acquire(CO2FootprintProperties)} in its {@code doStart} and {@link #release()} in its
+ * {@code doStop}. The first acquire creates the resource, the last release closes it.
+ *
+ * @param <T> type of the shared resource
+ */
+public class SharedResource<T extends AutoCloseable> {
+
+	public interface Factory<T> {
+		T create(CO2FootprintProperties properties) throws Exception;
+	}
+
+	private final Factory<T> factory;
+
+	private T resource;
+	private int references;
+
+	public SharedResource(Factory<T> factory) {
+		this.factory = factory;
+	}
+
+	public synchronized T acquire(CO2FootprintProperties properties) throws Exception {
+		if (resource == null) resource = factory.create(properties);
+		references++;
+		return resource;
+	}
+
+	public synchronized void release() throws Exception {
+		if (references == 0) return;
+
+		references--;
+		if (references == 0) {
+			T closing = resource;
+			resource = null;
+			closing.close();
+		}
+	}
+
+	/**
+	 * @return the shared resource or {@code null} if no bean holds it at the moment
+	 */
+	public synchronized T get() {
+		return resource;
+	}
+}
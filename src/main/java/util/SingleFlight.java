@@ -0,0 +1,114 @@
+package util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical requests: while a call for a key is in flight, further callers with the same key
+ * don't start their own call but get the result of the running one. Nothing is cached after the call completed.
+ *
+ * @param <K> type of the normalized request
+ * @param <V> type of the result
+ */
+public class SingleFlight<K, V> {
+
+	public interface Call<V, E extends Exception> {
+		V call() throws E;
+	}
+
+	private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * Runs {@code call} on the calling thread, unless the same call is in flight already.
+	 *
+	 * @throws E the exception of the call, also for the callers that waited for it
+	 */
+	@SuppressWarnings("unchecked")
+	public <E extends Exception> V call(K key, Call<V, E> call) throws E {
+		CompletableFuture<V> flight = new CompletableFuture<>();
+		CompletableFuture<V> running = inFlight.putIfAbsent(key, flight);
+		if (running != null) {
+			coalesced.incrementAndGet();
+			try {
+				return running.join();
+			} catch (CompletionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+				if (cause instanceof Error) throw (Error) cause;
+				throw (E) cause;
+			}
+		}
+
+		calls.incrementAndGet();
+		try {
+			V value = call.call();
+			inFlight.remove(key, flight);
+			flight.complete(value);
+			return value;
+		} catch (Exception | Error e) {
+			inFlight.remove(key, flight);
+			flight.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Starts {@code call}, unless the same call is in flight already.
+	 *
+	 * @return the result of the call, shared by all callers, so it must not be cancelled
+	 */
+	public CompletableFuture<V> callAsync(K key, Supplier<CompletableFuture<V>> call) {
+		CompletableFuture<V> flight = new CompletableFuture<>();
+		CompletableFuture<V> running = inFlight.putIfAbsent(key, flight);
+		if (running != null) {
+			coalesced.incrementAndGet();
+			return running;
+		}
+
+		calls.incrementAndGet();
+		try {
+			call.get().whenComplete((value, e) -> {
+				inFlight.remove(key, flight);
+				if (e == null) flight.complete(value);
+				else flight.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+			});
+		} catch (RuntimeException | Error e) {
+			inFlight.remove(key, flight);
+			flight.completeExceptionally(e);
+		}
+		return flight;
+	}
+
+	public int inFlight() {
+		return inFlight.size();
+	}
+
+	/**
+	 * @return number of calls that were actually made
+	 */
+	public long getCalls() {
+		return calls.get();
+	}
+
+	/**
+	 * @return number of callers that got the result of a call made for another caller
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	@Override
+	public String toString() {
+		return "SingleFlight{" +
+				"inFlight=" + inFlight() +
+				", calls=" + getCalls() +
+				", coalesced=" + getCoalesced() +
+				'}';
+	}
+}